@@ -0,0 +1,67 @@
+package com.kingtan.users.security;
+
+import jakarta.servlet.FilterChain;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * One full pass of {@link JwtAuthenticationFilter} for an authenticated request.
+ * <p>
+ * {@code stateless} trusts the token claims; {@code revalidated} loads the user through
+ * {@link CustomUserDetailsService} on every request. The service is a mock, so database time is
+ * excluded.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class JwtAuthenticationFilterBenchmark {
+
+    @Param({"stateless", "revalidated"})
+    public String mode;
+
+    private JwtAuthenticationFilter filter;
+    private String authorization;
+    private final FilterChain chain = (request, response) -> { };
+
+    @Setup
+    public void setUp() {
+        JwtUtil jwtUtil = JwtUtilBenchmark.newJwtUtil();
+        UserPrincipal principal = new UserPrincipal(42L, "benchUser", "hash", true, 3L,
+                List.of(new SimpleGrantedAuthority("ROLE_USER")));
+        CustomUserDetailsService userDetailsService = mock(CustomUserDetailsService.class);
+        when(userDetailsService.loadUserByUsername("benchUser")).thenReturn(principal);
+
+        AccountVersionRegistry accountVersions = new AccountVersionRegistry(Duration.ofSeconds(60), 100_000);
+        UserDetailsCache userCache = new UserDetailsCache(10_000, Duration.ofMinutes(5));
+        filter = new JwtAuthenticationFilter(jwtUtil, userDetailsService, accountVersions, userCache);
+        ReflectionTestUtils.setField(filter, "stateless", "stateless".equals(mode));
+
+        authorization = "Bearer " + jwtUtil.generateToken(principal);
+        userCache.putUserInCache(principal);
+        accountVersions.record("benchUser", 3L, accountVersions.generation());
+    }
+
+    @Benchmark
+    public Object doFilter() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/v1/users/benchUser");
+        request.addHeader("Authorization", authorization);
+        filter.doFilter(request, new MockHttpServletResponse(), chain);
+        Object authentication = SecurityContextHolder.getContext().getAuthentication();
+        SecurityContextHolder.clearContext();
+        return authentication;
+    }
+}
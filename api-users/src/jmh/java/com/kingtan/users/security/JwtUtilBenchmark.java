@@ -0,0 +1,68 @@
+package com.kingtan.users.security;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token issue and verification cost, paid on every login and every authenticated request.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class JwtUtilBenchmark {
+
+    static final String SECRET = "dGVzdC1vbmx5LWp3dC1zZWNyZXQta2V5LWZvci1rdW5ndGFuLXVzZXJzLWFwaS1iZW5jaG1hcmtzLTEyMzQ1Njc4OTA=";
+
+    private JwtUtil jwtUtil;
+    private UserPrincipal principal;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        jwtUtil = newJwtUtil();
+        principal = new UserPrincipal(42L, "benchUser", "hash", true, 3L,
+                List.of(new SimpleGrantedAuthority("ROLE_USER"), new SimpleGrantedAuthority("ROLE_ADMIN")));
+        token = jwtUtil.generateToken(principal);
+    }
+
+    static JwtUtil newJwtUtil() {
+        JwtUtil jwtUtil = new JwtUtil();
+        ReflectionTestUtils.setField(jwtUtil, "jwtSecret", SECRET);
+        ReflectionTestUtils.setField(jwtUtil, "jwtExpiration", 3_600_000L);
+        jwtUtil.init();
+        return jwtUtil;
+    }
+
+    @Benchmark
+    public String generateToken() {
+        return jwtUtil.generateToken("benchUser");
+    }
+
+    @Benchmark
+    public String generateTokenWithClaims() {
+        return jwtUtil.generateToken(principal);
+    }
+
+    @Benchmark
+    public boolean validateToken() {
+        return jwtUtil.validateToken(token);
+    }
+
+    @Benchmark
+    public String getUsernameFromToken() {
+        return jwtUtil.getUsernameFromToken(token);
+    }
+
+    @Benchmark
+    public Optional<JwtClaims> verifyToken() {
+        return jwtUtil.verifyToken(token);
+    }
+}
@@ -0,0 +1,118 @@
+package com.kingtan.users.security;
+
+import com.kingtan.users.UsersApplication;
+import com.kingtan.users.model.User;
+import com.kingtan.users.repository.UserRepository;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of a burst of concurrent {@code POST /api/v1/auth/login} requests against the running
+ * application, with {@code spring.threads.virtual.enabled} off and on.
+ * <p>
+ * Each fork boots the app on a random port with the {@code test} profile (in-memory H2), rate
+ * limiting off and the user cache disabled, so every login goes through Tomcat, the security
+ * filters, a user lookup and a BCrypt check on the hashing pool. BCrypt strength is lowered to 8
+ * to keep iterations short, and the hashing queue is sized for a whole burst so nothing is
+ * rejected with 503. Logins are spread over {@link #USERS} accounts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class LoginConcurrencyBenchmark {
+
+    static final int CONCURRENT_LOGINS = 400;
+    static final int USERS = 100;
+
+    @Param({"false", "true"})
+    public boolean virtualThreads;
+
+    private ConfigurableApplicationContext context;
+    private ExecutorService clientExecutor;
+    private HttpClient client;
+    private URI loginUri;
+
+    @Setup
+    public void setUp() {
+        context = new SpringApplicationBuilder(UsersApplication.class)
+                .profiles("test")
+                // Command-line arguments, so they override application.yml and the test profile
+                .run(
+                        "--server.port=0",
+                        "--spring.threads.virtual.enabled=" + virtualThreads,
+                        "--spring.jpa.show-sql=false",
+                        "--logging.level.root=WARN",
+                        "--app.tracing.log-spans=false",
+                        "--app.rate-limit.enabled=false",
+                        "--app.security.user-cache.max-size=0",
+                        "--app.security.password.bcrypt-strength=8",
+                        "--app.security.hashing.queue-capacity=" + CONCURRENT_LOGINS);
+
+        String hash = context.getBean(PasswordEncoder.class).encode("secret");
+        UserRepository userRepository = context.getBean(UserRepository.class);
+        for (int i = 0; i < USERS; i++) {
+            User user = new User();
+            user.setUsername("benchUser" + i);
+            user.setEmail("bench" + i + "@example.com");
+            user.setPassword(hash);
+            userRepository.save(user);
+        }
+
+        int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+        loginUri = URI.create("http://localhost:" + port + "/api/v1/auth/login");
+        // The client side always uses virtual threads so it never limits the server
+        clientExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .executor(clientExecutor)
+                .build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        client.close();
+        clientExecutor.shutdownNow();
+        context.close();
+    }
+
+    /** Scored per login; each invocation is a burst of {@link #CONCURRENT_LOGINS} logins. */
+    @Benchmark
+    @OperationsPerInvocation(CONCURRENT_LOGINS)
+    public int loginBurst() {
+        List<CompletableFuture<HttpResponse<Void>>> responses = new ArrayList<>(CONCURRENT_LOGINS);
+        for (int i = 0; i < CONCURRENT_LOGINS; i++) {
+            HttpRequest request = HttpRequest.newBuilder(loginUri)
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(
+                            "{\"username\":\"benchUser" + (i % USERS) + "\",\"password\":\"secret\"}"))
+                    .build();
+            responses.add(client.sendAsync(request, HttpResponse.BodyHandlers.discarding()));
+        }
+        int succeeded = 0;
+        for (CompletableFuture<HttpResponse<Void>> response : responses) {
+            int status = response.join().statusCode();
+            if (status != 200) {
+                throw new IllegalStateException("Login failed with HTTP " + status);
+            }
+            succeeded++;
+        }
+        return succeeded;
+    }
+}
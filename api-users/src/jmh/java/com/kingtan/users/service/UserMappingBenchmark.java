@@ -0,0 +1,46 @@
+package com.kingtan.users.service;
+
+import com.kingtan.users.dto.UserDTO;
+import com.kingtan.users.model.Role;
+import com.kingtan.users.model.User;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Entity to DTO mapping done for every user returned by the API.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class UserMappingBenchmark {
+
+    @Param({"1", "3"})
+    public int roleCount;
+
+    private UserService userService;
+    private User user;
+
+    @Setup
+    public void setUp() {
+        userService = new UserService(null, null, null, null, null);
+        user = new User();
+        user.setId(42L);
+        user.setUsername("benchUser");
+        user.setEmail("bench@example.com");
+        for (int i = 0; i < roleCount; i++) {
+            Role role = new Role();
+            role.setId((long) i);
+            role.setName("ROLE_" + i);
+            user.getRoles().add(role);
+        }
+    }
+
+    @Benchmark
+    public UserDTO mapToDTO() {
+        return userService.mapToDTO(user);
+    }
+}
@@ -0,0 +1,103 @@
+package com.kingtan.users.config;
+
+import com.kingtan.users.model.MailOutbox;
+import com.kingtan.users.repository.MailOutboxRepository;
+import com.kingtan.users.security.LoginRateLimitFilter;
+import com.kingtan.users.security.PasswordHashingExecutor;
+import com.kingtan.users.security.UserDetailsCache;
+import com.kingtan.users.service.ExpiredTokenPurger;
+import com.kingtan.users.service.MailDispatcher;
+import com.kingtan.users.service.UserExistenceFilter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes the counters the services already keep as Micrometer meters.
+ * <p>
+ * Latency timers come from {@code @Observed} on the instrumented methods; the meters here only read
+ * existing state when the registry is scraped, so nothing on the request path touches a registry.
+ * Hikari pool and Hibernate statistics meters are registered by Spring Boot itself.
+ */
+@Configuration
+public class MetricsConfig {
+
+    @Bean
+    public MeterBinder passwordHashingMetrics(PasswordHashingExecutor executor) {
+        return registry -> {
+            Gauge.builder("auth.password.hash.pool.size", executor, PasswordHashingExecutor::getPoolSize)
+                    .description("Threads hashing passwords").register(registry);
+            Gauge.builder("auth.password.hash.pool.active", executor, PasswordHashingExecutor::getActiveCount)
+                    .description("Password hashes in progress").register(registry);
+            Gauge.builder("auth.password.hash.queued", executor, PasswordHashingExecutor::getQueueDepth)
+                    .description("Password hashes waiting for a thread").register(registry);
+            FunctionCounter.builder("auth.password.hash.rejected", executor, PasswordHashingExecutor::getRejectedCount)
+                    .description("Password hashes refused because the queue was full").register(registry);
+            FunctionTimer.builder("auth.password.hash.wait", executor, PasswordHashingExecutor::getWaitCount,
+                            e -> e.getTotalWait().toNanos(), TimeUnit.NANOSECONDS)
+                    .description("Time password hashes spent queued").register(registry);
+            Gauge.builder("auth.password.hash.wait.max", executor, e -> e.getMaxWait().toNanos() / 1e9)
+                    .description("Longest time a password hash spent queued in the last two minutes")
+                    .baseUnit("seconds").register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder authMetrics(UserDetailsCache userDetailsCache, UserExistenceFilter userExistenceFilter,
+                                   LoginRateLimitFilter loginRateLimitFilter) {
+        return registry -> {
+            FunctionCounter.builder("cache.gets", userDetailsCache, c -> c.stats().hitCount())
+                    .tags("cache", "userDetails", "result", "hit").register(registry);
+            FunctionCounter.builder("cache.gets", userDetailsCache, c -> c.stats().missCount())
+                    .tags("cache", "userDetails", "result", "miss").register(registry);
+            FunctionCounter.builder("cache.evictions", userDetailsCache, c -> c.stats().evictionCount())
+                    .tags("cache", "userDetails").register(registry);
+            Gauge.builder("cache.size", userDetailsCache, UserDetailsCache::size)
+                    .tags("cache", "userDetails").register(registry);
+            FunctionCounter.builder("auth.user_filter.short_circuited", userExistenceFilter,
+                            UserExistenceFilter::getShortCircuitedLookups)
+                    .description("Lookups of unknown accounts answered without a query").register(registry);
+            FunctionCounter.builder("auth.rate_limit.rejected", loginRateLimitFilter, LoginRateLimitFilter::getRejectedCount)
+                    .description("Login and reset requests rejected with 429").register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder mailMetrics(MailOutboxRepository outboxRepository, ObjectProvider<MailDispatcher> mailDispatcher) {
+        return registry -> {
+            // Counted on scrape, not per send, so the query rate follows the scrape interval
+            for (MailOutbox.Status status : MailOutbox.Status.values()) {
+                Gauge.builder("mail.outbox.messages", outboxRepository, r -> r.countByStatus(status))
+                        .tag("status", status.name().toLowerCase(Locale.ROOT)).description("Rows in the mail outbox")
+                        .register(registry);
+            }
+            mailDispatcher.ifAvailable(dispatcher -> {
+                FunctionCounter.builder("mail.sent", dispatcher, MailDispatcher::getSentCount)
+                        .register(registry);
+                FunctionCounter.builder("mail.send.failures", dispatcher, MailDispatcher::getFailedAttemptCount)
+                        .description("Send attempts that failed and were rescheduled or abandoned").register(registry);
+                FunctionCounter.builder("mail.abandoned", dispatcher, MailDispatcher::getAbandonedCount)
+                        .description("Mails marked FAILED after max-attempts").register(registry);
+            });
+        };
+    }
+
+    @Bean
+    public MeterBinder purgeMetrics(ObjectProvider<ExpiredTokenPurger> purger) {
+        return registry -> purger.ifAvailable(p -> {
+            FunctionCounter.builder("purge.rows", p, ExpiredTokenPurger::getResetTokensPurged)
+                    .tag("table", "password_reset_token").register(registry);
+            FunctionCounter.builder("purge.rows", p, ExpiredTokenPurger::getTwoFactorCodesPurged)
+                    .tag("table", "two_factor_codes").register(registry);
+            FunctionCounter.builder("purge.rows", p, ExpiredTokenPurger::getFailedMailsPurged)
+                    .tag("table", "mail_outbox").register(registry);
+        });
+    }
+}
@@ -0,0 +1,46 @@
+package com.kingtan.users.config;
+
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.aop.framework.AopProxyUtils;
+import org.springframework.stereotype.Component;
+
+/**
+ * Wraps every Spring Data repository call in an observation, so each query shows up as its own
+ * span under the request and as a {@code db.repository} timer tagged by repository and method.
+ * <p>
+ * Repositories returning a {@code Stream} are timed until the cursor is opened, not until it is
+ * drained.
+ */
+@Aspect
+@Component
+public class RepositoryObservationAspect {
+
+    public static final String OBSERVATION_NAME = "db.repository";
+
+    private final ObservationRegistry observationRegistry;
+
+    public RepositoryObservationAspect(ObservationRegistry observationRegistry) {
+        this.observationRegistry = observationRegistry;
+    }
+
+    @Around("execution(* org.springframework.data.repository.Repository+.*(..))")
+    public Object observe(ProceedingJoinPoint joinPoint) throws Throwable {
+        String repository = repositoryName(joinPoint.getThis());
+        String method = joinPoint.getSignature().getName();
+        return Observation.createNotStarted(OBSERVATION_NAME, observationRegistry)
+                .contextualName(repository + "." + method)
+                .lowCardinalityKeyValue("repository", repository)
+                .lowCardinalityKeyValue("method", method)
+                .observeChecked(() -> joinPoint.proceed());
+    }
+
+    // The proxy implements the application's repository interface first, then Spring Data's own
+    private static String repositoryName(Object proxy) {
+        Class<?>[] interfaces = AopProxyUtils.proxiedUserInterfaces(proxy);
+        return interfaces.length > 0 ? interfaces[0].getSimpleName() : proxy.getClass().getSimpleName();
+    }
+}
@@ -0,0 +1,47 @@
+package com.kingtan.users.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.boot.task.SimpleAsyncTaskSchedulerBuilder;
+import org.springframework.boot.task.ThreadPoolTaskSchedulerBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.concurrent.SimpleAsyncTaskScheduler;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+/**
+ * Schedulers for background jobs.
+ * <p>
+ * {@code taskScheduler} is the default for {@code @Scheduled} methods and follows
+ * {@code spring.threads.virtual.enabled}: a new virtual thread per run when enabled, otherwise a
+ * pool of platform threads sized by {@code spring.task.scheduling.pool.size}. Boot would create
+ * the same beans, but backs off because the mail scheduler below is also a task scheduler.
+ * <p>
+ * Mail delivery gets its own platform thread: the Jakarta Mail SMTP transport does its network
+ * I/O inside {@code synchronized} methods, which would pin the carrier thread of a virtual thread
+ * for the whole SMTP conversation.
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+
+    public static final String MAIL_SCHEDULER = "mailTaskScheduler";
+
+    @Bean(name = "taskScheduler")
+    @ConditionalOnThreading(Threading.VIRTUAL)
+    public SimpleAsyncTaskScheduler taskSchedulerVirtualThreads(SimpleAsyncTaskSchedulerBuilder builder) {
+        return builder.build();
+    }
+
+    @Bean
+    @ConditionalOnThreading(Threading.PLATFORM)
+    public ThreadPoolTaskScheduler taskScheduler(ThreadPoolTaskSchedulerBuilder builder) {
+        return builder.build();
+    }
+
+    @Bean(name = MAIL_SCHEDULER)
+    public ThreadPoolTaskScheduler mailTaskScheduler(ThreadPoolTaskSchedulerBuilder builder) {
+        return builder.poolSize(1).threadNamePrefix("mail-").build();
+    }
+}
@@ -0,0 +1,47 @@
+package com.kingtan.users.config;
+
+import io.micrometer.tracing.Span;
+import io.micrometer.tracing.Tracer;
+import io.opentelemetry.api.trace.TraceId;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Returns the trace id of the request in {@code X-Trace-Id}, so a slow or failed call reported by
+ * a client can be matched to its spans and log lines.
+ * <p>
+ * Runs right after the server observation filter has started the request span and before the
+ * security chain, so rejected requests carry the header too. The header is set for requests that
+ * were not sampled as well: their trace id still appears in the log lines.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 2)
+public class TraceIdHeaderFilter extends OncePerRequestFilter {
+
+    public static final String TRACE_ID_HEADER = "X-Trace-Id";
+
+    private final Tracer tracer;
+
+    public TraceIdHeaderFilter(Tracer tracer) {
+        this.tracer = tracer;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        // isNoop() is also true for unsampled spans, which still carry a real trace id
+        Span span = tracer.currentSpan();
+        if (span != null && TraceId.isValid(span.context().traceId())) {
+            response.setHeader(TRACE_ID_HEADER, span.context().traceId());
+        }
+        filterChain.doFilter(request, response);
+    }
+}
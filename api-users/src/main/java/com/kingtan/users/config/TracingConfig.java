@@ -0,0 +1,24 @@
+package com.kingtan.users.config;
+
+import io.opentelemetry.exporter.logging.LoggingSpanExporter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Local span export, so traces can be read without running a collector.
+ * <p>
+ * Spring Boot hands every {@code SpanExporter} bean to the OpenTelemetry batch span processor.
+ * The logging exporter writes one line per finished span (name, trace and span ids, duration)
+ * through the application's logging, i.e. the asynchronous appender. An OTLP exporter can be added
+ * next to it later without changing the instrumentation.
+ */
+@Configuration
+public class TracingConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "app.tracing.log-spans", havingValue = "true", matchIfMissing = true)
+    public LoggingSpanExporter loggingSpanExporter() {
+        return LoggingSpanExporter.create();
+    }
+}
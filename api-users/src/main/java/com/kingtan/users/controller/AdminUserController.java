@@ -0,0 +1,75 @@
+package com.kingtan.users.controller;
+
+import com.kingtan.users.service.UserExportService;
+import com.kingtan.users.service.UserFileFormat;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Bulk operations on all users. Kept off {@code /api/v1/users} so that no fixed path segment can
+ * shadow {@code GET /api/v1/users/{username}} for a user of the same name.
+ */
+@RestController
+@RequestMapping("/api/v1/admin/users")
+@Tag(name = "Users", description = "Administrative operations on all users")
+public class AdminUserController {
+
+    private final UserExportService userExportService;
+
+    @Autowired
+    public AdminUserController(UserExportService userExportService) {
+        this.userExportService = userExportService;
+    }
+
+    @GetMapping("/export")
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(summary = "Export all users as CSV or newline-delimited JSON",
+            description = "Rows are streamed from a database cursor with id, username, email, roles and enabled. " +
+                    "The body is gzip-compressed on the fly when the request sends Accept-Encoding: gzip.")
+    public ResponseEntity<StreamingResponseBody> exportUsers(
+            @RequestParam(defaultValue = "ndjson") String format,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        UserFileFormat fileFormat = Arrays.stream(UserFileFormat.values())
+                .filter(candidate -> candidate.extension().equalsIgnoreCase(format))
+                .findFirst()
+                .orElse(null);
+        if (fileFormat == null) {
+            return ResponseEntity.badRequest().build();
+        }
+        boolean gzip = acceptEncoding != null && acceptEncoding.toLowerCase(Locale.ROOT).contains("gzip");
+        StreamingResponseBody body = out -> {
+            if (gzip) {
+                GZIPOutputStream compressed = new GZIPOutputStream(out, 64 * 1024);
+                userExportService.export(compressed, fileFormat);
+                compressed.finish();
+            } else {
+                userExportService.export(out, fileFormat);
+            }
+        };
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(fileFormat.mediaType()))
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                        .filename("users." + fileFormat.extension()).build().toString())
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return response.body(body);
+    }
+}
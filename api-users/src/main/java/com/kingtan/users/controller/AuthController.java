@@ -1,11 +1,18 @@
 package com.kingtan.users.controller;
 
 import com.kingtan.users.dto.LoginRequest;
+import com.kingtan.users.security.HashingCapacityExceededException;
 import com.kingtan.users.security.JwtUtil;
+import com.kingtan.users.security.UserPrincipal;
+import io.micrometer.observation.annotation.Observed;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
@@ -20,6 +27,8 @@ import org.springframework.web.bind.annotation.RestController;
 @Tag(name = "Users", description = "Operations for login")
 public class AuthController {
 
+    private static final Logger log = LoggerFactory.getLogger(AuthController.class);
+
     private final AuthenticationManager authenticationManager;
     private final JwtUtil jwtUtil;
 
@@ -31,12 +40,21 @@ public class AuthController {
 
     @PostMapping("/login")
     @Operation(summary = "User login")
+    @Observed(name = "auth.login")
     public ResponseEntity<String> login(@Valid @RequestBody LoginRequest request) {
-        System.out.printf("request: %s\n", request);
-        Authentication authentication = authenticationManager.authenticate(
-                new UsernamePasswordAuthenticationToken(request.username(), request.password()));
-        String token = jwtUtil.generateToken(authentication.getName());
-        System.out.printf("token: %s\n", token);
+        Authentication authentication;
+        try {
+            authentication = authenticationManager.authenticate(
+                    new UsernamePasswordAuthenticationToken(request.username(), request.password()));
+        } catch (HashingCapacityExceededException e) {
+            log.warn("Rejected login for {}: hashing pool saturated", request.username());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                    .body("Too many logins in progress, please retry");
+        }
+        String token = jwtUtil.generateToken((UserPrincipal) authentication.getPrincipal());
+        // Never log the token itself: it is a bearer credential until it expires
+        log.debug("Issued token for {}", request.username());
         return ResponseEntity.ok(token);
     }
 }
@@ -3,7 +3,6 @@ package com.kingtan.users.controller;
 import com.kingtan.users.service.PasswordResetService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
-import jakarta.mail.MessagingException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -22,7 +21,7 @@ public class PasswordResetController {
 
     @PostMapping("/password/reset")
     @Operation(summary = "Request password reset")
-    public ResponseEntity<String> requestPasswordReset(@RequestParam String email) throws MessagingException {
+    public ResponseEntity<String> requestPasswordReset(@RequestParam String email) {
         passwordResetService.createPasswordResetToken(email);
         return ResponseEntity.ok("Password reset email sent");
     }
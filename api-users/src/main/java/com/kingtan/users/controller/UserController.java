@@ -1,28 +1,57 @@
 package com.kingtan.users.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.kingtan.users.dto.ImportResult;
 import com.kingtan.users.dto.SignupRequest;
+import com.kingtan.users.dto.UserBatchRequest;
+import com.kingtan.users.dto.UserBatchResponse;
 import com.kingtan.users.dto.UserDTO;
+import com.kingtan.users.service.UserFileFormat;
+import com.kingtan.users.service.UserImportService;
 import com.kingtan.users.service.UserService;
+import com.kingtan.users.service.UserVersionConflictException;
+import com.kingtan.users.service.Versioned;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.util.List;
+import java.util.Optional;
 
 @RestController
 @RequestMapping("/api/v1/users")
 @Tag(name = "Users", description = "Operations for managing users")
 public class UserController {
 
+    private static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+    private static final String TEXT_CSV_VALUE = "text/csv";
+    // Clients may keep user representations but must revalidate them with If-None-Match before reuse
+    private static final CacheControl REVALIDATE = CacheControl.noCache().cachePrivate();
+
     private final UserService userService;
+    private final UserImportService userImportService;
+    private final ObjectMapper objectMapper;
 
     @Autowired
-    public UserController(UserService userService) {
+    public UserController(UserService userService, UserImportService userImportService, ObjectMapper objectMapper) {
         this.userService = userService;
+        this.userImportService = userImportService;
+        this.objectMapper = objectMapper;
     }
 
     @PostMapping("/register")
@@ -35,25 +64,104 @@ public class UserController {
     @Operation(summary = "Get user by ID")
     @GetMapping("/{username}")
     @PreAuthorize("hasRole('USER') or hasRole('ADMIN')")
-    public ResponseEntity<UserDTO> getUser(@PathVariable String username) {
-        UserDTO userDTO = userService.findByUsername(username);
-        return ResponseEntity.ok(userDTO);
+    public ResponseEntity<UserDTO> getUser(@PathVariable String username, WebRequest request) {
+        // A revalidation of an unchanged user reads only its version, not the roles or the DTO
+        if (request.getHeader(HttpHeaders.IF_NONE_MATCH) != null) {
+            Optional<String> etag = userService.findUserETag(username);
+            if (etag.isPresent() && request.checkNotModified(etag.get())) {
+                return notModified(etag.get());
+            }
+        }
+        Versioned<UserDTO> user = userService.findVersionedByUsername(username);
+        return ResponseEntity.ok().cacheControl(REVALIDATE).eTag(user.etag()).body(user.body());
     }
 
-    @GetMapping
+    @PostMapping("/batch")
     @PreAuthorize("hasRole('USER') or hasRole('ADMIN')")
-    @Operation(summary = "Get all users")
-    public ResponseEntity<List<UserDTO>> getAllUsers() {
-        List<UserDTO> users = userService.findAllUsers();
-        return ResponseEntity.ok(users);
+    @Operation(summary = "Look up many users at once",
+            description = "Resolves up to " + UserService.MAX_BATCH_SIZE + " ids and " + UserService.MAX_BATCH_SIZE +
+                    " usernames with one query. Unknown keys are omitted from the returned maps.")
+    public ResponseEntity<UserBatchResponse> findUsers(@Valid @RequestBody UserBatchRequest request) {
+        return ResponseEntity.ok(userService.findUsers(request.ids(), request.usernames()));
+    }
+
+    @GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
+    @PreAuthorize("hasRole('USER') or hasRole('ADMIN')")
+    @Operation(summary = "Get a page of users",
+            description = "Keyset pagination on id: pass the last id of a page as 'after' to get the next one. " +
+                    "The Link header points to the next page while there may be more.")
+    public ResponseEntity<List<UserDTO>> getAllUsers(@RequestParam(required = false) Long after,
+                                                     @RequestParam(defaultValue = "" + UserService.DEFAULT_PAGE_SIZE) int size,
+                                                     WebRequest request) {
+        if (request.getHeader(HttpHeaders.IF_NONE_MATCH) != null) {
+            String etag = userService.findUsersPageETag(after, size);
+            if (request.checkNotModified(etag)) {
+                return notModified(etag);
+            }
+        }
+        Versioned<List<UserDTO>> page = userService.findVersionedUsersPage(after, size);
+        List<UserDTO> users = page.body();
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().cacheControl(REVALIDATE).eTag(page.etag());
+        // A full page means there may be more after it
+        if (users.size() == UserService.effectivePageSize(size)) {
+            String next = ServletUriComponentsBuilder.fromCurrentRequest()
+                    .replaceQueryParam("after", users.get(users.size() - 1).id())
+                    .toUriString();
+            response.header(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"");
+        }
+        return response.body(users);
+    }
+
+    @GetMapping(produces = APPLICATION_NDJSON_VALUE)
+    @PreAuthorize("hasRole('USER') or hasRole('ADMIN')")
+    @Operation(summary = "Stream all users as newline-delimited JSON")
+    public ResponseEntity<StreamingResponseBody> streamAllUsers() {
+        StreamingResponseBody body = out -> {
+            try (SequenceWriter writer = objectMapper.writerFor(UserDTO.class)
+                    .withRootValueSeparator("\n")
+                    .writeValues(out)) {
+                userService.streamAllUsers(user -> {
+                    try {
+                        writer.write(user);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(APPLICATION_NDJSON_VALUE))
+                .body(body);
+    }
+
+    @PostMapping(value = "/import", consumes = {TEXT_CSV_VALUE, APPLICATION_NDJSON_VALUE})
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(summary = "Bulk import users from CSV or newline-delimited JSON",
+            description = "Each row is validated like a registration. CSV needs a header naming the username, " +
+                    "email and password columns. Rejected rows are reported by line number and do not stop the import.")
+    public ResponseEntity<ImportResult> importUsers(@RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType,
+                                                    InputStream body) throws IOException {
+        UserFileFormat format = MediaType.parseMediaType(contentType)
+                .isCompatibleWith(MediaType.parseMediaType(APPLICATION_NDJSON_VALUE))
+                ? UserFileFormat.NDJSON
+                : UserFileFormat.CSV;
+        return ResponseEntity.ok(userImportService.importUsers(body, format));
     }
 
     @PutMapping("/{id}")
     @PreAuthorize("hasRole('ADMIN') or #id == authentication.principal.id")
-    @Operation(summary = "Update user by ID")
-    public ResponseEntity<UserDTO> updateUser(@PathVariable Long id, @Valid @RequestBody UserDTO userDTO) {
-        UserDTO updatedUser = userService.updateUser(id, userDTO);
-        return ResponseEntity.ok(updatedUser);
+    @Operation(summary = "Update user by ID",
+            description = "Send the ETag of the user as If-Match to update only if nobody changed it since; " +
+                    "a stale tag gets 412. An update that loses a race with a concurrent one gets 409.")
+    public ResponseEntity<UserDTO> updateUser(@PathVariable Long id, @Valid @RequestBody UserDTO userDTO,
+                                              @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        Versioned<UserDTO> updatedUser;
+        try {
+            updatedUser = userService.updateUser(id, userDTO, ifMatch);
+        } catch (UserVersionConflictException e) {
+            return ResponseEntity.status(ifMatch != null ? HttpStatus.PRECONDITION_FAILED : HttpStatus.CONFLICT).build();
+        }
+        return ResponseEntity.ok().eTag(updatedUser.etag()).body(updatedUser.body());
     }
 
     @DeleteMapping("/{id}")
@@ -63,4 +171,8 @@ public class UserController {
         userService.deleteUser(id);
         return ResponseEntity.noContent().build();
     }
-}
\ No newline at end of file
+
+    private static <T> ResponseEntity<T> notModified(String etag) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).cacheControl(REVALIDATE).eTag(etag).build();
+    }
+}
@@ -0,0 +1,14 @@
+package com.kingtan.users.dto;
+
+import java.util.List;
+
+/**
+ * Outcome of a bulk user import. Only the first rejected rows are listed in {@code errors};
+ * {@code failed} always counts all of them.
+ */
+public record ImportResult(long imported, long failed, List<RowError> errors, boolean errorsTruncated) {
+
+    /** A rejected row, by its 1-based line number in the uploaded file. */
+    public record RowError(long line, String message) {
+    }
+}
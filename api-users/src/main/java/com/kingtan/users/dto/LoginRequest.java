@@ -8,4 +8,9 @@ public record LoginRequest (
 
     @NotBlank(message = "Password is required")
     String password
-) {}
+) {
+    @Override
+    public String toString() {
+        return "LoginRequest[username=" + username + ", password=****]";
+    }
+}
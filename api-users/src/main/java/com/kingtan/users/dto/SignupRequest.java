@@ -13,4 +13,9 @@ public record SignupRequest (
 
     @NotBlank(message = "Password is required")
     String password
-) {}
+) {
+    @Override
+    public String toString() {
+        return "SignupRequest[username=" + username + ", email=" + email + ", password=****]";
+    }
+}
@@ -0,0 +1,17 @@
+package com.kingtan.users.dto;
+
+import com.kingtan.users.service.UserService;
+import jakarta.validation.constraints.Size;
+
+import java.util.Set;
+
+/**
+ * Users to resolve in one call, by id, by username or both; either set may be omitted.
+ */
+public record UserBatchRequest(
+        @Size(max = UserService.MAX_BATCH_SIZE, message = "At most " + UserService.MAX_BATCH_SIZE + " ids per request")
+        Set<Long> ids,
+
+        @Size(max = UserService.MAX_BATCH_SIZE, message = "At most " + UserService.MAX_BATCH_SIZE + " usernames per request")
+        Set<String> usernames
+) {}
@@ -0,0 +1,10 @@
+package com.kingtan.users.dto;
+
+import java.util.Map;
+
+/**
+ * Users found for a {@link UserBatchRequest}, keyed the way they were asked for. Ids and usernames
+ * that do not exist are simply absent.
+ */
+public record UserBatchResponse(Map<Long, UserDTO> ids, Map<String, UserDTO> usernames) {
+}
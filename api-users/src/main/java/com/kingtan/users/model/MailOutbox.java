@@ -0,0 +1,50 @@
+package com.kingtan.users.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * An outgoing email waiting to be delivered by the mail dispatcher. Rows are deleted once sent,
+ * so the table only holds mail that is pending or has given up. The body is plaintext and may
+ * contain a live password reset token while the row is pending; it is redacted when the
+ * dispatcher gives up on the row.
+ */
+@Data
+@Entity
+@Table(name = "mail_outbox", indexes = @Index(name = "idx_mail_outbox_due", columnList = "status, nextAttemptAt"))
+public class MailOutbox {
+
+    public enum Status { PENDING, FAILED }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "mail_outbox_id_seq")
+    @SequenceGenerator(name = "mail_outbox_id_seq", sequenceName = "mail_outbox_id_seq", allocationSize = 50)
+    private Long id;
+
+    @Column(nullable = false)
+    private String recipient;
+
+    @Column(nullable = false)
+    private String subject;
+
+    @Column(nullable = false, length = 4000)
+    private String body;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private Status status = Status.PENDING;
+
+    @Column(nullable = false)
+    private int attempts = 0;
+
+    @Column(nullable = false)
+    private LocalDateTime nextAttemptAt;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(length = 500)
+    private String lastError;
+}
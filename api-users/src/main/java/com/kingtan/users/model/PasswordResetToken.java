@@ -7,13 +7,17 @@ import java.time.LocalDateTime;
 
 @Data
 @Entity
+@Table(indexes = @Index(name = "idx_password_reset_token_expiry", columnList = "expiryDate"))
 public class PasswordResetToken {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "password_reset_token_id_seq")
+    @SequenceGenerator(name = "password_reset_token_id_seq", sequenceName = "password_reset_token_id_seq", allocationSize = 50)
     private Long id;
 
-    @Column(nullable = false)
-    private String token;
+    // Hex SHA-256 of the token mailed to the user. The plaintext token is only in the mail_outbox
+    // body until that mail is sent (row deleted) or abandoned (body redacted)
+    @Column(name = "token_hash", nullable = false, unique = true, length = 64)
+    private String tokenHash;
 
     @OneToOne
     @JoinColumn(name = "user_id", nullable = false)
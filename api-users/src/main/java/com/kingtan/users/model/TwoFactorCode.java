@@ -6,10 +6,11 @@ import java.time.LocalDateTime;
 
 @Data
 @Entity
-@Table(name = "two_factor_codes")
+@Table(name = "two_factor_codes", indexes = @Index(name = "idx_two_factor_codes_expires_at", columnList = "expiresAt"))
 public class TwoFactorCode {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "two_factor_codes_id_seq")
+    @SequenceGenerator(name = "two_factor_codes_id_seq", sequenceName = "two_factor_codes_id_seq", allocationSize = 50)
     private Long id;
 
     @Column(nullable = false)
@@ -2,24 +2,38 @@ package com.kingtan.users.model;
 
 import jakarta.persistence.*;
 import lombok.Data;
+import lombok.ToString;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import java.time.LocalDateTime;
 import java.util.HashSet;
 import java.util.Set;
 
 @Data
 @Entity
-@Table(name = "users")
+@Table(name = "users", uniqueConstraints = {
+        @UniqueConstraint(name = User.USERNAME_CONSTRAINT, columnNames = "username"),
+        @UniqueConstraint(name = User.EMAIL_CONSTRAINT, columnNames = "email")
+})
 public class User {
+    // The names PostgreSQL gives the UNIQUE columns in schema.sql; conflicts are reported by name
+    public static final String USERNAME_CONSTRAINT = "users_username_key";
+    public static final String EMAIL_CONSTRAINT = "users_email_key";
+
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // Pooled sequence: one nextval reserves 50 ids, so inserts can be sent as JDBC batches
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "users_id_seq")
+    @SequenceGenerator(name = "users_id_seq", sequenceName = "users_id_seq", allocationSize = 50)
     private Long id;
 
-    @Column(unique = true, nullable = false)
+    @Column(nullable = false)
     private String username;
 
-    @Column(unique = true, nullable = false)
+    @Column(nullable = false)
     private String email;
 
     @Column(nullable = false)
+    @ToString.Exclude
     private String password;
 
 //    @Column
@@ -28,6 +42,20 @@ public class User {
     @Column(nullable = false)
     private boolean enabled = true;
 
+    // Bumped whenever credentials or roles change; tokens issued for an older value are rejected
+    @Column(nullable = false)
+    private long authVersion = 0;
+
+    // Optimistic lock; also bumped by role changes, and the source of the user's HTTP ETag
+    @Version
+    @Column(nullable = false)
+    private long version;
+
+    // Set on every insert and update; other instances' existence filters pick up new and renamed users by it
+    @UpdateTimestamp
+    @Column(nullable = false)
+    private LocalDateTime updatedAt;
+
     @ManyToMany(fetch = FetchType.EAGER)
     @JoinTable(
             name = "user_roles",
@@ -0,0 +1,39 @@
+package com.kingtan.users.repository;
+
+import com.kingtan.users.model.MailOutbox;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface MailOutboxRepository extends JpaRepository<MailOutbox, Long> {
+
+    /**
+     * Claims up to {@code limit} due mails for the current transaction. Rows already locked by
+     * another dispatcher are skipped ({@code FOR UPDATE SKIP LOCKED}), so several instances can
+     * drain the outbox concurrently without sending a mail twice.
+     */
+    @Query(value = "SELECT * FROM mail_outbox WHERE status = 'PENDING' AND next_attempt_at <= :now " +
+            "ORDER BY id LIMIT :limit FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<MailOutbox> claimDue(@Param("now") LocalDateTime now, @Param("limit") int limit);
+
+    long countByStatus(MailOutbox.Status status);
+
+    /**
+     * Deletes up to {@code limit} FAILED mails given up before {@code cutoff} in one statement and
+     * its own transaction. For FAILED rows {@code next_attempt_at} holds the time of the last
+     * attempt, so the {@code (status, next_attempt_at)} index serves the scan.
+     *
+     * @return the number of rows deleted
+     */
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = "DELETE FROM mail_outbox WHERE id IN (" +
+            "SELECT id FROM mail_outbox WHERE status = 'FAILED' AND next_attempt_at < :cutoff LIMIT :limit)",
+            nativeQuery = true)
+    int deleteFailedChunk(@Param("cutoff") LocalDateTime cutoff, @Param("limit") int limit);
+}
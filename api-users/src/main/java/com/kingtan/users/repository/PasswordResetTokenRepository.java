@@ -2,12 +2,28 @@ package com.kingtan.users.repository;
 
 import com.kingtan.users.model.PasswordResetToken;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
 public interface PasswordResetTokenRepository extends JpaRepository<PasswordResetToken, Long> {
-    Optional<PasswordResetToken> findByToken(String token);
+    Optional<PasswordResetToken> findByTokenHash(String tokenHash);
     List<PasswordResetToken> findByExpiryDateBefore(LocalDateTime dateTime);
+
+    /**
+     * Deletes up to {@code limit} tokens that expired before {@code cutoff} in one statement and
+     * its own transaction, walking the expiry index.
+     *
+     * @return the number of rows deleted
+     */
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = "DELETE FROM password_reset_token WHERE id IN (" +
+            "SELECT id FROM password_reset_token WHERE expiry_date < :cutoff LIMIT :limit)", nativeQuery = true)
+    int deleteExpiredChunk(@Param("cutoff") LocalDateTime cutoff, @Param("limit") int limit);
 }
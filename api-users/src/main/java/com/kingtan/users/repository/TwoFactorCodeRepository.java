@@ -0,0 +1,36 @@
+package com.kingtan.users.repository;
+
+import com.kingtan.users.model.TwoFactorCode;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+
+public interface TwoFactorCodeRepository extends JpaRepository<TwoFactorCode, Long> {
+
+    /**
+     * Deletes up to {@code limit} codes that expired before {@code cutoff} in one statement and
+     * its own transaction, walking the expiry index.
+     *
+     * @return the number of rows deleted
+     */
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = "DELETE FROM two_factor_codes WHERE id IN (" +
+            "SELECT id FROM two_factor_codes WHERE expires_at < :cutoff LIMIT :limit)", nativeQuery = true)
+    int deleteExpiredChunk(@Param("cutoff") LocalDateTime cutoff, @Param("limit") int limit);
+
+    /**
+     * Deletes up to {@code limit} codes that have already been used.
+     *
+     * @return the number of rows deleted
+     */
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = "DELETE FROM two_factor_codes WHERE id IN (" +
+            "SELECT id FROM two_factor_codes WHERE used = TRUE LIMIT :limit)", nativeQuery = true)
+    int deleteUsedChunk(@Param("limit") int limit);
+}
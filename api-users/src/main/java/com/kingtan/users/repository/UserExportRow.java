@@ -0,0 +1,7 @@
+package com.kingtan.users.repository;
+
+/**
+ * One user as written by the bulk export, with role names aggregated into one comma-separated column.
+ */
+public record UserExportRow(Long id, String username, String email, boolean enabled, String roleNames) {
+}
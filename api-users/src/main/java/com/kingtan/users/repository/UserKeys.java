@@ -0,0 +1,7 @@
+package com.kingtan.users.repository;
+
+/**
+ * The unique lookup keys of one user, read without loading the entity or its roles.
+ */
+public record UserKeys(Long id, String username, String email) {
+}
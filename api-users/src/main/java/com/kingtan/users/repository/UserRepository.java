@@ -1,13 +1,113 @@
 package com.kingtan.users.repository;
 
 import com.kingtan.users.model.User;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 public interface UserRepository extends JpaRepository<User, Long> {
     Optional<User> findByUsername(String username);
     Optional<User> findByEmail(String email);
     boolean existsByUsername(String username);
     boolean existsByEmail(String email);
-}
\ No newline at end of file
+
+    // Read paths for UserDTO: one row per user with role names aggregated, no entities loaded
+
+    @Query("""
+            select new com.kingtan.users.repository.UserSummary(u.id, u.username, u.email, u.version, listagg(r.name, ','))
+            from User u left join u.roles r
+            where u.username = :username
+            group by u.id, u.username, u.email, u.version""")
+    Optional<UserSummary> findSummaryByUsername(@Param("username") String username);
+
+    // Keyset page: the next `limit` users after the given id
+    @Query("""
+            select new com.kingtan.users.repository.UserSummary(u.id, u.username, u.email, u.version, listagg(r.name, ','))
+            from User u left join u.roles r
+            where u.id > :afterId
+            group by u.id, u.username, u.email, u.version
+            order by u.id""")
+    List<UserSummary> findSummariesAfter(@Param("afterId") Long afterId, Limit limit);
+
+    // Server-side cursor over all users; must be consumed inside a transaction and closed
+    @Query("""
+            select new com.kingtan.users.repository.UserSummary(u.id, u.username, u.email, u.version, listagg(r.name, ','))
+            from User u left join u.roles r
+            group by u.id, u.username, u.email, u.version
+            order by u.id""")
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    Stream<UserSummary> streamSummaries();
+
+    // Batch lookup for other services; IN lists are padded (see application.yml) to reuse statements
+    @Query("""
+            select new com.kingtan.users.repository.UserSummary(u.id, u.username, u.email, u.version, listagg(r.name, ','))
+            from User u left join u.roles r
+            where u.id in :ids or u.username in :usernames
+            group by u.id, u.username, u.email, u.version
+            order by u.id""")
+    List<UserSummary> findSummariesByIdInOrUsernameIn(@Param("ids") Collection<Long> ids,
+                                                      @Param("usernames") Collection<String> usernames);
+
+    // Versions only, for answering conditional GETs without the role join
+
+    @Query("""
+            select new com.kingtan.users.repository.UserVersion(u.id, u.version)
+            from User u
+            where u.username = :username""")
+    Optional<UserVersion> findVersionByUsername(@Param("username") String username);
+
+    // Same rows as findSummariesAfter
+    @Query("""
+            select new com.kingtan.users.repository.UserVersion(u.id, u.version)
+            from User u
+            where u.id > :afterId
+            order by u.id""")
+    List<UserVersion> findVersionsAfter(@Param("afterId") Long afterId, Limit limit);
+
+    // Cursor for the bulk export; rows are read-only projections fetched 1000 at a time
+    @Query("""
+            select new com.kingtan.users.repository.UserExportRow(u.id, u.username, u.email, u.enabled, listagg(r.name, ','))
+            from User u left join u.roles r
+            group by u.id, u.username, u.email, u.enabled
+            order by u.id""")
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    Stream<UserExportRow> streamExportRows();
+
+    // Keyset page of usernames and emails, used to build the in-memory existence filter
+    @Query("""
+            select new com.kingtan.users.repository.UserKeys(u.id, u.username, u.email)
+            from User u
+            where u.id > :afterId
+            order by u.id""")
+    List<UserKeys> findKeysAfter(@Param("afterId") Long afterId, Limit limit);
+
+    // Keyset page of users inserted or updated since a point in time, used to refresh the existence filter
+    @Query("""
+            select new com.kingtan.users.repository.UserKeys(u.id, u.username, u.email)
+            from User u
+            where u.updatedAt >= :since and u.id > :afterId
+            order by u.id""")
+    List<UserKeys> findKeysChangedSince(@Param("since") LocalDateTime since, @Param("afterId") Long afterId,
+                                        Limit limit);
+
+    // Existing users clashing with a chunk of bulk-imported rows
+    @Query("""
+            select new com.kingtan.users.repository.UserKeys(u.id, u.username, u.email)
+            from User u
+            where u.username in :usernames or u.email in :emails""")
+    List<UserKeys> findKeysByUsernameInOrEmailIn(@Param("usernames") Collection<String> usernames,
+                                                 @Param("emails") Collection<String> emails);
+}
@@ -0,0 +1,21 @@
+package com.kingtan.users.repository;
+
+import com.kingtan.users.dto.UserDTO;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Read-only row of a user with role names aggregated into one comma-separated column,
+ * so a list of users costs a single query and no entity hydration.
+ */
+public record UserSummary(Long id, String username, String email, long version, String roleNames) {
+
+    public UserDTO toDTO() {
+        Set<String> roles = roleNames == null || roleNames.isEmpty()
+                ? Set.of()
+                : Arrays.stream(roleNames.split(",")).collect(Collectors.toSet());
+        return new UserDTO(id, username, email, roles);
+    }
+}
@@ -0,0 +1,8 @@
+package com.kingtan.users.repository;
+
+/**
+ * Id and optimistic-lock version of a user: enough to tell whether a representation a client
+ * already holds is still current, without loading roles or building a DTO.
+ */
+public record UserVersion(Long id, long version) {
+}
@@ -0,0 +1,71 @@
+package com.kingtan.users.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.kingtan.users.service.UserAccountChangedEvent;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers the last account-state version read from the database for each username, so that
+ * JWTs carrying that version can be trusted without another lookup.
+ * <p>
+ * Entries expire after {@code app.jwt.account-version-ttl} so that changes made on another
+ * instance are picked up within that window, and are dropped immediately on local changes.
+ * Beyond {@code app.jwt.account-version-max-entries} Caffeine evicts the least valuable entries;
+ * an evicted user only costs one database lookup.
+ * <p>
+ * A request that read the user before a change commits must not put the old version back after
+ * the change has invalidated it. Callers take a {@link #generation()} before reading the user and
+ * pass it to {@link #record}; a version read across any invalidation is dropped, and the next
+ * request simply reads the user again.
+ */
+@Component
+public class AccountVersionRegistry {
+
+    private final Cache<String, Long> versions;
+    private final AtomicLong generation = new AtomicLong();
+
+    public AccountVersionRegistry(@Value("${app.jwt.account-version-ttl:60s}") Duration ttl,
+                                  @Value("${app.jwt.account-version-max-entries:100000}") long maxEntries) {
+        this.versions = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(ttl)
+                .build();
+    }
+
+    public boolean isCurrent(String username, long version) {
+        Long current = versions.getIfPresent(username);
+        return current != null && current == version;
+    }
+
+    /** Stamp to take before reading the account state that will be passed to {@link #record}. */
+    public long generation() {
+        return generation.get();
+    }
+
+    /**
+     * Remembers {@code version} unless an invalidation happened after {@code readGeneration} was
+     * taken.
+     */
+    public void record(String username, long version, long readGeneration) {
+        // invalidate() bumps the generation before removing under the same key lock, so either this
+        // sees the new generation or the removal runs after it
+        versions.asMap().compute(username, (name, current) ->
+                generation.get() == readGeneration ? Long.valueOf(version) : current);
+    }
+
+    public void invalidate(String username) {
+        generation.incrementAndGet();
+        versions.invalidate(username);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onAccountChanged(UserAccountChangedEvent event) {
+        invalidate(event.username());
+    }
+}
@@ -0,0 +1,143 @@
+package com.kingtan.users.security;
+
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+/**
+ * Reads up to {@code maxBytes} of the request body up front so a filter can inspect it, and replays
+ * it to the rest of the chain followed by anything left unread.
+ */
+class CachedBodyHttpServletRequest extends HttpServletRequestWrapper {
+
+    private final byte[] prefix;
+    private final boolean complete;
+    private ServletInputStream inputStream;
+
+    CachedBodyHttpServletRequest(HttpServletRequest request, int maxBytes) throws IOException {
+        super(request);
+        InputStream in = request.getInputStream();
+        byte[] read = in.readNBytes(maxBytes + 1);
+        this.complete = read.length <= maxBytes;
+        this.prefix = read;
+    }
+
+    /** The body, or null if it is longer than {@code maxBytes}. */
+    byte[] getCachedBody() {
+        return complete ? prefix : null;
+    }
+
+    @Override
+    public ServletInputStream getInputStream() throws IOException {
+        if (inputStream == null) {
+            inputStream = new ReplayingInputStream(complete ? null : super.getInputStream());
+        }
+        return inputStream;
+    }
+
+    @Override
+    public BufferedReader getReader() throws IOException {
+        String encoding = getCharacterEncoding();
+        Charset charset = encoding != null ? Charset.forName(encoding) : StandardCharsets.UTF_8;
+        return new BufferedReader(new InputStreamReader(getInputStream(), charset));
+    }
+
+    /**
+     * Serves the buffered prefix, then the unread rest of the original stream if there is one.
+     * Non-blocking reads are supported: a fully buffered body is always ready, otherwise the
+     * listener is registered on the original stream and the prefix is read along with it.
+     */
+    private class ReplayingInputStream extends ServletInputStream {
+
+        private final ServletInputStream rest;
+        private int position;
+
+        ReplayingInputStream(ServletInputStream rest) {
+            this.rest = rest;
+        }
+
+        private boolean prefixRemaining() {
+            return position < prefix.length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (prefixRemaining()) {
+                return prefix[position++] & 0xff;
+            }
+            return rest != null ? rest.read() : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            Objects.checkFromIndexSize(off, len, b.length);
+            if (len == 0) {
+                return 0;
+            }
+            if (prefixRemaining()) {
+                int n = Math.min(len, prefix.length - position);
+                System.arraycopy(prefix, position, b, off, n);
+                position += n;
+                return n;
+            }
+            return rest != null ? rest.read(b, off, len) : -1;
+        }
+
+        @Override
+        public boolean isFinished() {
+            return !prefixRemaining() && (rest == null || rest.isFinished());
+        }
+
+        @Override
+        public boolean isReady() {
+            return prefixRemaining() || rest == null || rest.isReady();
+        }
+
+        @Override
+        public void setReadListener(ReadListener readListener) {
+            Objects.requireNonNull(readListener, "readListener");
+            if (rest != null) {
+                rest.setReadListener(new ReadListener() {
+                    @Override
+                    public void onDataAvailable() throws IOException {
+                        readListener.onDataAvailable();
+                    }
+
+                    @Override
+                    public void onAllDataRead() throws IOException {
+                        // The container may report the original stream drained before the prefix was read
+                        if (prefixRemaining()) {
+                            readListener.onDataAvailable();
+                        }
+                        readListener.onAllDataRead();
+                    }
+
+                    @Override
+                    public void onError(Throwable t) {
+                        readListener.onError(t);
+                    }
+                });
+                return;
+            }
+            try {
+                if (prefixRemaining()) {
+                    readListener.onDataAvailable();
+                }
+                if (isFinished()) {
+                    readListener.onAllDataRead();
+                }
+            } catch (IOException | RuntimeException e) {
+                readListener.onError(e);
+            }
+        }
+    }
+}
@@ -2,37 +2,75 @@ package com.kingtan.users.security;
 
 import com.kingtan.users.model.User;
 import com.kingtan.users.repository.UserRepository;
+import com.kingtan.users.service.UserAccountChangedEvent;
+import com.kingtan.users.service.UserExistenceFilter;
+import io.micrometer.observation.annotation.Observed;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.stream.Collectors;
 
 @Service
-public class CustomUserDetailsService implements UserDetailsService {
+@Observed(name = "auth.user_details")
+public class CustomUserDetailsService implements UserDetailsService, UserDetailsPasswordService {
+
+    private static final Logger log = LoggerFactory.getLogger(CustomUserDetailsService.class);
 
     private final UserRepository userRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final UserExistenceFilter userExistenceFilter;
 
     @Autowired
-    public CustomUserDetailsService(UserRepository userRepository) {
+    public CustomUserDetailsService(UserRepository userRepository, ApplicationEventPublisher eventPublisher,
+                                    UserExistenceFilter userExistenceFilter) {
         this.userRepository = userRepository;
+        this.eventPublisher = eventPublisher;
+        this.userExistenceFilter = userExistenceFilter;
     }
 
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
+        if (!userExistenceFilter.mightContainUsername(username)) {
+            throw new UsernameNotFoundException("User not found: " + username);
+        }
         User user = userRepository.findByUsername(username)
                 .orElseThrow(() -> new UsernameNotFoundException("User not found: " + username));
-System.out.printf("CustomUserDetailsService.loadUserByUsername(%s)\n, user = %s\n", username, user);
-        return new org.springframework.security.core.userdetails.User(
+        log.debug("Loaded user {} (id {})", username, user.getId());
+        return toPrincipal(user);
+    }
+
+    /**
+     * Stores a password re-encoded with the current algorithm and cost after a successful login.
+     * The password itself is unchanged, so issued tokens stay valid; only cached copies of the old
+     * hash are evicted.
+     */
+    @Override
+    @Transactional
+    public UserDetails updatePassword(UserDetails userDetails, String newPassword) {
+        User user = userRepository.findByUsername(userDetails.getUsername())
+                .orElseThrow(() -> new UsernameNotFoundException("User not found: " + userDetails.getUsername()));
+        user.setPassword(newPassword);
+        userRepository.save(user);
+        eventPublisher.publishEvent(new UserAccountChangedEvent(user.getUsername()));
+        return toPrincipal(user);
+    }
+
+    private static UserPrincipal toPrincipal(User user) {
+        return new UserPrincipal(
+                user.getId(),
                 user.getUsername(),
                 user.getPassword(),
                 user.isEnabled(),
-                true, // accountNonExpired
-                true, // credentialsNonExpired
-                true, // accountNonLocked
+                user.getAuthVersion(),
                 user.getRoles().stream()
                         .map(role -> new SimpleGrantedAuthority(role.getName()))
                         .collect(Collectors.toList())
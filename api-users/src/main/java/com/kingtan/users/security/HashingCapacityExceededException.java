@@ -0,0 +1,22 @@
+package com.kingtan.users.security;
+
+import org.springframework.security.authentication.InternalAuthenticationServiceException;
+
+/**
+ * Thrown when the password hashing queue is full. Extends
+ * {@link InternalAuthenticationServiceException} so that the provider manager rethrows it
+ * immediately instead of trying other providers.
+ */
+public class HashingCapacityExceededException extends InternalAuthenticationServiceException {
+
+    private final long retryAfterSeconds;
+
+    public HashingCapacityExceededException(long retryAfterSeconds) {
+        super("Password hashing capacity exceeded");
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -5,25 +5,35 @@ import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
-import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
+import java.util.Optional;
 
 @Component
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
     private final JwtUtil jwtUtil;
     private final CustomUserDetailsService userDetailsService;
+    private final AccountVersionRegistry accountVersions;
+    private final UserDetailsCache userCache;
+
+    // When enabled, tokens carrying a current account-state version are trusted without a database lookup
+    @Value("${app.jwt.stateless:true}")
+    private boolean stateless = true;
 
     @Autowired
-    public JwtAuthenticationFilter(JwtUtil jwtUtil, CustomUserDetailsService userDetailsService) {
+    public JwtAuthenticationFilter(JwtUtil jwtUtil, CustomUserDetailsService userDetailsService,
+                                   AccountVersionRegistry accountVersions, UserDetailsCache userCache) {
         this.jwtUtil = jwtUtil;
         this.userDetailsService = userDetailsService;
+        this.accountVersions = accountVersions;
+        this.userCache = userCache;
     }
 
     @Override
@@ -39,12 +49,14 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         if (header != null && header.startsWith("Bearer ")) {
             String token = header.substring(7);
             try {
-                if (jwtUtil.validateToken(token)) {
-                    String username = jwtUtil.getUsernameFromToken(token);
-                    UserDetails userDetails = userDetailsService.loadUserByUsername(username);
-                    UsernamePasswordAuthenticationToken auth = new UsernamePasswordAuthenticationToken(
-                            userDetails, null, userDetails.getAuthorities());
-                    SecurityContextHolder.getContext().setAuthentication(auth);
+                Optional<JwtClaims> claims = jwtUtil.verifyToken(token);
+                if (claims.isPresent()) {
+                    UserDetails userDetails = resolveUser(claims.get());
+                    if (userDetails != null) {
+                        UsernamePasswordAuthenticationToken auth = new UsernamePasswordAuthenticationToken(
+                                userDetails, null, userDetails.getAuthorities());
+                        SecurityContextHolder.getContext().setAuthentication(auth);
+                    }
                 }
             } catch (Exception e) {
                 logger.error("JWT authentication failed", e);
@@ -52,4 +64,34 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         }
         filterChain.doFilter(request, response);
     }
+
+    /**
+     * Builds the principal from the token claims when their account-state version is known to be
+     * current, otherwise loads the user from the database and checks the token is not stale.
+     * <p>
+     * The revalidation deliberately skips {@link UserDetailsCache}: a cached entry may be nearly a
+     * full TTL old, so it could vouch for a version already changed on another instance and
+     * stretch the staleness window to twice the account-version TTL. The fresh user is put back
+     * into the cache for the login path.
+     *
+     * @return the user, or null if the token was issued for an earlier account state
+     */
+    private UserDetails resolveUser(JwtClaims claims) {
+        Long tokenVersion = claims.authVersion();
+        if (stateless && tokenVersion != null && accountVersions.isCurrent(claims.subject(), tokenVersion)) {
+            return UserPrincipal.fromClaims(claims);
+        }
+
+        long readGeneration = accountVersions.generation();
+        UserDetails userDetails = userDetailsService.loadUserByUsername(claims.subject());
+        userCache.putUserInCache(userDetails);
+        if (tokenVersion != null && userDetails instanceof UserPrincipal principal) {
+            if (principal.getAuthVersion() != tokenVersion) {
+                logger.debug("Rejecting JWT issued for a previous account state of " + claims.subject());
+                return null;
+            }
+            accountVersions.record(principal.getUsername(), principal.getAuthVersion(), readGeneration);
+        }
+        return userDetails;
+    }
 }
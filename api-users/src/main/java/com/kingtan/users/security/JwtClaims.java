@@ -0,0 +1,18 @@
+package com.kingtan.users.security;
+
+import java.util.Date;
+import java.util.Set;
+
+/**
+ * Claims extracted from a verified JWT in a single parse.
+ * <p>
+ * {@code userId} and {@code authVersion} are null for tokens issued without account state.
+ */
+public record JwtClaims(
+        String subject,
+        Long userId,
+        Set<String> roles,
+        Long authVersion,
+        Date issuedAt,
+        Date expiration
+) {}
@@ -1,40 +1,106 @@
 package com.kingtan.users.security;
 
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.io.Decoders;
+import io.micrometer.observation.annotation.Observed;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.GrantedAuthority;
 import org.springframework.stereotype.Component;
 
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.util.Collection;
 import java.util.Date;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @Component
 public class JwtUtil {
 
+    static final String USER_ID_CLAIM = "uid";
+    static final String ROLES_CLAIM = "roles";
+    static final String AUTH_VERSION_CLAIM = "ver";
+
     @Value("${app.jwt.secret}")
     private String jwtSecret;
 
     @Value("${app.jwt.expiration}")
     private long jwtExpiration;
 
+    // Built once from jwtSecret; both are immutable and thread-safe
+    private SecretKey signingKey;
+    private JwtParser parser;
+
+    @PostConstruct
+    public void init() {
+        signingKey = new SecretKeySpec(Decoders.BASE64.decode(jwtSecret), SignatureAlgorithm.HS512.getJcaName());
+        parser = Jwts.parserBuilder().setSigningKey(signingKey).build();
+    }
+
     public String generateToken(String username) {
         return Jwts.builder()
                 .setSubject(username)
                 .setIssuedAt(new Date())
                 .setExpiration(new Date(System.currentTimeMillis() + jwtExpiration))
-                .signWith(SignatureAlgorithm.HS512, jwtSecret)
+                .signWith(signingKey, SignatureAlgorithm.HS512)
                 .compact();
     }
 
-    public String getUsernameFromToken(String token) {
-        return Jwts.parser().setSigningKey(jwtSecret).parseClaimsJws(token).getBody().getSubject();
+    /**
+     * Issues a token that also carries the user id, roles and account-state version, so that
+     * requests can be authenticated from the token alone while that version is current.
+     */
+    public String generateToken(UserPrincipal principal) {
+        return Jwts.builder()
+                .setSubject(principal.getUsername())
+                .claim(USER_ID_CLAIM, principal.getId())
+                .claim(ROLES_CLAIM, principal.getAuthorities().stream()
+                        .map(GrantedAuthority::getAuthority)
+                        .collect(Collectors.toList()))
+                .claim(AUTH_VERSION_CLAIM, principal.getAuthVersion())
+                .setIssuedAt(new Date())
+                .setExpiration(new Date(System.currentTimeMillis() + jwtExpiration))
+                .signWith(signingKey, SignatureAlgorithm.HS512)
+                .compact();
     }
 
-    public boolean validateToken(String token) {
+    /**
+     * Verifies the signature and expiry of the token and extracts its claims in one parse.
+     *
+     * @return the claims, or empty if the token is missing, malformed, tampered with or expired
+     */
+    @Observed(name = "auth.jwt.verify")
+    public Optional<JwtClaims> verifyToken(String token) {
         try {
-            Jwts.parser().setSigningKey(jwtSecret).parseClaimsJws(token);
-            return true;
+            return Optional.of(toJwtClaims(parser.parseClaimsJws(token).getBody()));
         } catch (Exception e) {
-            return false;
+            return Optional.empty();
         }
     }
+
+    public String getUsernameFromToken(String token) {
+        return parser.parseClaimsJws(token).getBody().getSubject();
+    }
+
+    public boolean validateToken(String token) {
+        return verifyToken(token).isPresent();
+    }
+
+    private JwtClaims toJwtClaims(Claims claims) {
+        Set<String> roles = Set.of();
+        if (claims.get(ROLES_CLAIM) instanceof Collection<?> values) {
+            roles = values.stream().map(String::valueOf).collect(Collectors.toUnmodifiableSet());
+        }
+        return new JwtClaims(claims.getSubject(), longClaim(claims, USER_ID_CLAIM), roles,
+                longClaim(claims, AUTH_VERSION_CLAIM), claims.getIssuedAt(), claims.getExpiration());
+    }
+
+    private static Long longClaim(Claims claims, String name) {
+        return claims.get(name) instanceof Number value ? value.longValue() : null;
+    }
 }
@@ -0,0 +1,115 @@
+package com.kingtan.users.security;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Throttles the unauthenticated endpoints configured under {@code app.rate-limit} per client
+ * address and per account, before any password hashing or mail is done for the request.
+ * Rejected requests get 429 with Retry-After.
+ */
+@Component
+public class LoginRateLimitFilter extends OncePerRequestFilter {
+
+    // Login and reset bodies are tiny; larger bodies are passed through without an account check
+    private static final int MAX_INSPECTED_BODY = 8 * 1024;
+
+    private record EndpointLimiters(String accountField, TokenBucketRateLimiter perIp, TokenBucketRateLimiter perAccount) {}
+
+    private final boolean enabled;
+    private final Map<String, EndpointLimiters> limitersByPath = new HashMap<>();
+    private final ObjectMapper objectMapper;
+    private final LongAdder rejected = new LongAdder();
+
+    @Autowired
+    public LoginRateLimitFilter(RateLimitProperties properties, ObjectMapper objectMapper) {
+        this.enabled = properties.enabled();
+        this.objectMapper = objectMapper;
+        properties.endpoints().values().forEach(endpoint -> limitersByPath.put(endpoint.path(), new EndpointLimiters(
+                endpoint.accountField(),
+                limiter(endpoint.perIp(), properties.maxKeys()),
+                limiter(endpoint.perAccount(), properties.maxKeys()))));
+    }
+
+    private static TokenBucketRateLimiter limiter(RateLimitProperties.Limit limit, long maxKeys) {
+        return limit == null ? null : new TokenBucketRateLimiter(limit.capacity(), limit.period(), maxKeys);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !enabled || !"POST".equals(request.getMethod()) || !limitersByPath.containsKey(request.getRequestURI());
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        EndpointLimiters limiters = limitersByPath.get(request.getRequestURI());
+        HttpServletRequest forwarded = request;
+
+        long waitNanos = limiters.perIp() == null ? 0 : limiters.perIp().tryAcquire(request.getRemoteAddr());
+        if (waitNanos == 0 && limiters.perAccount() != null && limiters.accountField() != null) {
+            String account;
+            if (isJson(request)) {
+                CachedBodyHttpServletRequest cached = new CachedBodyHttpServletRequest(request, MAX_INSPECTED_BODY);
+                forwarded = cached;
+                account = readJsonField(cached.getCachedBody(), limiters.accountField());
+            } else {
+                account = request.getParameter(limiters.accountField());
+            }
+            if (account != null && !account.isBlank()) {
+                waitNanos = limiters.perAccount().tryAcquire(account.trim().toLowerCase(Locale.ROOT));
+            }
+        }
+
+        if (waitNanos > 0) {
+            rejected.increment();
+            long retryAfter = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + TimeUnit.SECONDS.toNanos(1) - 1));
+            response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfter));
+            response.setContentType(MediaType.TEXT_PLAIN_VALUE);
+            response.getWriter().write("Too many requests, please retry later");
+            return;
+        }
+        filterChain.doFilter(forwarded, response);
+    }
+
+    /** Requests rejected with 429 since startup. */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    private static boolean isJson(HttpServletRequest request) {
+        String contentType = request.getContentType();
+        return contentType != null && contentType.toLowerCase(Locale.ROOT).contains("json");
+    }
+
+    private String readJsonField(byte[] body, String field) {
+        if (body == null || body.length == 0) {
+            return null;
+        }
+        try {
+            JsonNode value = objectMapper.readTree(body).get(field);
+            return value != null && value.isTextual() ? value.asText() : null;
+        } catch (IOException e) {
+            // Malformed bodies are rejected by the controller
+            return null;
+        }
+    }
+}
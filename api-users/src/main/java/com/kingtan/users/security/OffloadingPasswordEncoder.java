@@ -0,0 +1,33 @@
+package com.kingtan.users.security;
+
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+/**
+ * Runs the CPU-heavy calls of a {@link PasswordEncoder} on the {@link PasswordHashingExecutor}.
+ */
+public class OffloadingPasswordEncoder implements PasswordEncoder {
+
+    private final PasswordEncoder delegate;
+    private final PasswordHashingExecutor executor;
+
+    public OffloadingPasswordEncoder(PasswordEncoder delegate, PasswordHashingExecutor executor) {
+        this.delegate = delegate;
+        this.executor = executor;
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return executor.execute(() -> delegate.encode(rawPassword));
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return executor.execute(() -> delegate.matches(rawPassword, encodedPassword));
+    }
+
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        // Only parses the hash
+        return delegate.upgradeEncoding(encodedPassword);
+    }
+}
@@ -0,0 +1,51 @@
+package com.kingtan.users.security;
+
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.function.IntToLongFunction;
+
+/**
+ * Picks the highest BCrypt strength whose hashing time fits a latency budget on the current
+ * hardware. Each strength step doubles the cost, so only a handful of measurements are needed.
+ */
+public final class PasswordHashCalibrator {
+
+    static final int MAX_BCRYPT_STRENGTH = 16;
+    private static final int SAMPLES = 3;
+
+    private PasswordHashCalibrator() {
+    }
+
+    /**
+     * @param minStrength strength returned even if it already exceeds the budget
+     * @return the highest strength in {@code [minStrength, 16]} that hashes within {@code budget}
+     */
+    public static int calibrateBcryptStrength(Duration budget, int minStrength) {
+        // Warm up the JIT so the first measurement is not inflated
+        new BCryptPasswordEncoder(4).encode("calibration");
+        return calibrate(PasswordHashCalibrator::medianBcryptNanos, budget, minStrength, MAX_BCRYPT_STRENGTH);
+    }
+
+    static int calibrate(IntToLongFunction nanosForStrength, Duration budget, int minStrength, int maxStrength) {
+        long budgetNanos = budget.toNanos();
+        int strength = minStrength;
+        while (strength < maxStrength && nanosForStrength.applyAsLong(strength + 1) <= budgetNanos) {
+            strength++;
+        }
+        return strength;
+    }
+
+    private static long medianBcryptNanos(int strength) {
+        BCryptPasswordEncoder encoder = new BCryptPasswordEncoder(strength);
+        long[] samples = new long[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            long started = System.nanoTime();
+            encoder.encode("calibration");
+            samples[i] = System.nanoTime() - started;
+        }
+        Arrays.sort(samples);
+        return samples[SAMPLES / 2];
+    }
+}
@@ -0,0 +1,137 @@
+package com.kingtan.users.security;
+
+import io.micrometer.core.instrument.Clock;
+import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+import io.micrometer.core.instrument.distribution.TimeWindowMax;
+import io.micrometer.observation.annotation.Observed;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.authentication.InternalAuthenticationServiceException;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs password hashing on a fixed pool of platform threads, one per core by default, in front of
+ * a bounded queue. Request threads wait for the result, so a burst of logins queues here instead
+ * of occupying every CPU; once the queue is full, callers get a
+ * {@link HashingCapacityExceededException} right away.
+ */
+@Component
+public class PasswordHashingExecutor {
+
+    private final ThreadPoolExecutor executor;
+    private final long retryAfterSeconds;
+
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder waits = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    // Same rolling window as a Timer's max, so a single slow burst ages out instead of pinning the gauge
+    private final TimeWindowMax maxWait = new TimeWindowMax(Clock.SYSTEM, DistributionStatisticConfig.DEFAULT);
+
+    public PasswordHashingExecutor(@Value("${app.security.hashing.threads:0}") int threads,
+                                   @Value("${app.security.hashing.queue-capacity:200}") int queueCapacity,
+                                   @Value("${app.security.hashing.retry-after:1s}") Duration retryAfter) {
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "password-hash-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        this.retryAfterSeconds = Math.max(1, retryAfter.toSeconds());
+    }
+
+    /**
+     * Runs {@code task} on the hashing pool and waits for its result.
+     *
+     * @throws HashingCapacityExceededException if the queue is full
+     */
+    @Observed(name = "auth.password.hash")
+    public <T> T execute(Callable<T> task) {
+        long submitted = System.nanoTime();
+        Future<T> future;
+        try {
+            future = executor.submit(() -> {
+                recordWait(System.nanoTime() - submitted);
+                return task.call();
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw new HashingCapacityExceededException(retryAfterSeconds);
+        }
+        try {
+            T result = future.get();
+            completed.increment();
+            return result;
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InternalAuthenticationServiceException("Interrupted while hashing password", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new InternalAuthenticationServiceException("Password hashing failed", e.getCause());
+        }
+    }
+
+    private void recordWait(long nanos) {
+        waits.increment();
+        totalWaitNanos.add(nanos);
+        maxWait.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public int getPoolSize() {
+        return executor.getCorePoolSize();
+    }
+
+    /** Tasks waiting for a hashing thread. */
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    /** Tasks that returned a result; failed and interrupted ones are not counted. */
+    public long getCompletedCount() {
+        return completed.sum();
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    /** Tasks a hashing thread has picked up, whatever their outcome. */
+    public long getWaitCount() {
+        return waits.sum();
+    }
+
+    /** Total time tasks spent queued before a hashing thread picked them up. */
+    public Duration getTotalWait() {
+        return Duration.ofNanos(totalWaitNanos.sum());
+    }
+
+    /** Longest queueing time within the last two minutes. */
+    public Duration getMaxWait() {
+        return Duration.ofNanos((long) maxWait.poll(TimeUnit.NANOSECONDS));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,31 @@
+package com.kingtan.users.security;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Rate limits for unauthenticated endpoints, keyed by endpoint name under
+ * {@code app.rate-limit.endpoints}.
+ *
+ * @param maxKeys upper bound on tracked clients or accounts per limit
+ */
+@ConfigurationProperties("app.rate-limit")
+public record RateLimitProperties(boolean enabled, long maxKeys, Map<String, Endpoint> endpoints) {
+
+    public RateLimitProperties {
+        maxKeys = maxKeys > 0 ? maxKeys : 100_000;
+        endpoints = endpoints == null ? Map.of() : Map.copyOf(endpoints);
+    }
+
+    /**
+     * @param path         POST path the limits apply to
+     * @param accountField JSON property or request parameter naming the account, for {@code perAccount}
+     * @param perIp        limit per client address, optional
+     * @param perAccount   limit per account, optional
+     */
+    public record Endpoint(String path, String accountField, Limit perIp, Limit perAccount) {}
+
+    public record Limit(int capacity, Duration period) {}
+}
@@ -1,33 +1,69 @@
 package com.kingtan.users.security;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
 import org.springframework.security.config.annotation.authentication.configuration.AuthenticationConfiguration;
 import org.springframework.security.config.annotation.method.configuration.EnableMethodSecurity;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.http.SessionCreationPolicy;
+import org.springframework.security.crypto.argon2.Argon2PasswordEncoder;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.DelegatingPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.crypto.password.Pbkdf2PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 
+import java.time.Duration;
+import java.util.Map;
+
 import static org.springframework.security.config.Customizer.withDefaults;
 
 @Configuration
 @EnableWebSecurity
 @EnableMethodSecurity(prePostEnabled = true)
+@EnableConfigurationProperties(RateLimitProperties.class)
 public class SecurityConfig {
 
+    private static final Logger log = LoggerFactory.getLogger(SecurityConfig.class);
+
     private final JwtUtil jwtUtil;
     private final CustomUserDetailsService userDetailsService;
     private final JwtAuthenticationFilter jwtAuthenticationFilter;
+    private final UserDetailsCache userDetailsCache;
+    private final PasswordHashingExecutor passwordHashingExecutor;
+    private final LoginRateLimitFilter loginRateLimitFilter;
+
+    // Algorithm for new hashes: bcrypt, argon2 or pbkdf2
+    @Value("${app.security.password.encoder:bcrypt}")
+    private String passwordEncoderId = "bcrypt";
+
+    // Minimum BCrypt strength; raised at startup up to the latency budget when calibration is on
+    @Value("${app.security.password.bcrypt-strength:10}")
+    private int bcryptStrength = 10;
+
+    @Value("${app.security.password.calibrate:false}")
+    private boolean calibrate = false;
 
-    public SecurityConfig(JwtUtil jwtUtil, CustomUserDetailsService userDetailsService, JwtAuthenticationFilter jwtAuthenticationFilter) {
+    @Value("${app.security.password.latency-budget:250ms}")
+    private Duration latencyBudget = Duration.ofMillis(250);
+
+    public SecurityConfig(JwtUtil jwtUtil, CustomUserDetailsService userDetailsService, JwtAuthenticationFilter jwtAuthenticationFilter,
+                          UserDetailsCache userDetailsCache, PasswordHashingExecutor passwordHashingExecutor,
+                          LoginRateLimitFilter loginRateLimitFilter) {
         this.jwtUtil = jwtUtil;
         this.userDetailsService = userDetailsService;
         this.jwtAuthenticationFilter = jwtAuthenticationFilter;
+        this.userDetailsCache = userDetailsCache;
+        this.passwordHashingExecutor = passwordHashingExecutor;
+        this.loginRateLimitFilter = loginRateLimitFilter;
     }
 
     @Bean
@@ -40,20 +76,58 @@ public class SecurityConfig {
                 // Configure authorization rules
                 .authorizeHttpRequests(auth -> auth
                         .requestMatchers("/api/v1/users/register", "/api/v1/auth/login", "/api/v1/auth/password/reset", "/api/v1/auth/password/reset/confirm").permitAll()
+                        .requestMatchers("/actuator/health/**", "/actuator/prometheus").permitAll()
+                        .requestMatchers("/actuator/**").hasRole("ADMIN")
+                        .requestMatchers("/api/v1/admin/**").hasRole("ADMIN")
                         .requestMatchers("/api/v1/users/**").hasRole("USER")
                         .anyRequest().authenticated()
                 )
                 // Enable HTTP Basic authentication with defaults
                 .httpBasic(withDefaults())
+                // Throttle login and password reset before any authentication work
+                .addFilterBefore(loginRateLimitFilter, UsernamePasswordAuthenticationFilter.class)
                 // Add custom JWT filter
                 .addFilterBefore(jwtAuthenticationFilter, UsernamePasswordAuthenticationFilter.class);
 
         return http.build();
     }
 
+    /**
+     * Encodes new passwords as {@code {id}hash} with the configured algorithm. Hashes stored before
+     * the prefix was introduced are checked as BCrypt, and any hash that is unprefixed, uses another
+     * algorithm or a lower BCrypt strength is upgraded on the next successful login.
+     */
     @Bean
     public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+        int strength = calibrate
+                ? PasswordHashCalibrator.calibrateBcryptStrength(latencyBudget, bcryptStrength)
+                : bcryptStrength;
+        if (calibrate) {
+            log.info("Calibrated BCrypt strength {} for a latency budget of {}", strength, latencyBudget);
+        }
+        BCryptPasswordEncoder bcrypt = new BCryptPasswordEncoder(strength);
+        Map<String, PasswordEncoder> encoders = Map.of(
+                "bcrypt", bcrypt,
+                "argon2", Argon2PasswordEncoder.defaultsForSpringSecurity_v5_8(),
+                "pbkdf2", Pbkdf2PasswordEncoder.defaultsForSpringSecurity_v5_8());
+        if (!encoders.containsKey(passwordEncoderId)) {
+            throw new IllegalArgumentException("Unknown password encoder: " + passwordEncoderId);
+        }
+        DelegatingPasswordEncoder encoder = new DelegatingPasswordEncoder(passwordEncoderId, encoders);
+        encoder.setDefaultPasswordEncoderForMatches(bcrypt);
+        return encoder;
+    }
+
+    @Bean
+    public DaoAuthenticationProvider authenticationProvider() {
+        // Login reads the user cache, which the JWT filter refreshes whenever it revalidates a token
+        DaoAuthenticationProvider provider = new DaoAuthenticationProvider(userDetailsService);
+        // Hash on the bounded hashing pool so login bursts cannot take every request thread and core
+        provider.setPasswordEncoder(new OffloadingPasswordEncoder(passwordEncoder(), passwordHashingExecutor));
+        provider.setUserCache(userDetailsCache);
+        // Rehash outdated passwords on successful login
+        provider.setUserDetailsPasswordService(userDetailsService);
+        return provider;
     }
 
     @Bean
@@ -0,0 +1,73 @@
+package com.kingtan.users.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Lock-free token bucket per key, implemented as the generic cell rate algorithm: each key holds
+ * only the time at which its bucket will be full again, advanced with a CAS per permit.
+ * <p>
+ * Keys live in a size-bounded cache and expire one refill period after their last use, at which
+ * point their bucket is full anyway, so expiry never forgives a client early.
+ */
+public class TokenBucketRateLimiter {
+
+    private final long intervalNanos;
+    private final long toleranceNanos;
+    private final LongSupplier clock;
+    private final Cache<String, AtomicLong> buckets;
+
+    /**
+     * @param capacity permits available in a burst
+     * @param period   time to refill an empty bucket
+     * @param maxKeys  upper bound on tracked keys
+     */
+    public TokenBucketRateLimiter(int capacity, Duration period, long maxKeys) {
+        this(capacity, period, maxKeys, System::nanoTime);
+    }
+
+    TokenBucketRateLimiter(int capacity, Duration period, long maxKeys, LongSupplier clock) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.intervalNanos = Math.max(1, period.toNanos() / capacity);
+        this.toleranceNanos = intervalNanos * (capacity - 1);
+        this.clock = clock;
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(maxKeys)
+                .expireAfterAccess(period.toNanos(), TimeUnit.NANOSECONDS)
+                .ticker(clock::getAsLong)
+                .build();
+    }
+
+    /**
+     * Takes one permit for {@code key}.
+     *
+     * @return 0 if the permit was granted, otherwise the nanoseconds until one becomes available
+     */
+    public long tryAcquire(String key) {
+        AtomicLong theoreticalArrival = buckets.get(key, k -> new AtomicLong(clock.getAsLong()));
+        while (true) {
+            long now = clock.getAsLong();
+            long stored = theoreticalArrival.get();
+            long arrival = stored - now > 0 ? stored : now;
+            long wait = arrival - now - toleranceNanos;
+            if (wait > 0) {
+                return wait;
+            }
+            if (theoreticalArrival.compareAndSet(stored, arrival + intervalNanos)) {
+                return 0;
+            }
+        }
+    }
+
+    long trackedKeys() {
+        buckets.cleanUp();
+        return buckets.estimatedSize();
+    }
+}
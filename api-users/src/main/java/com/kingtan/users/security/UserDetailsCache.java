@@ -0,0 +1,76 @@
+package com.kingtan.users.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.kingtan.users.service.UserAccountChangedEvent;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.userdetails.UserCache;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+
+/**
+ * Size- and TTL-bounded cache of loaded users for the login path ({@code DaoAuthenticationProvider}).
+ * {@link JwtAuthenticationFilter} only writes to it: token revalidation must see changes made on
+ * other instances, which entries here can hide for up to the TTL.
+ * <p>
+ * Changes are evicted on the instance that makes them only. Until an entry expires, another
+ * instance still accepts the password it cached, so the TTL defaults to the account-version TTL
+ * (60s) and is the longest an old password keeps working after a change.
+ * <p>
+ * Entries are copied on the way in and out, because Spring Security erases the password of the
+ * principal it returns after authentication.
+ */
+@Component
+public class UserDetailsCache implements UserCache {
+
+    private final Cache<String, UserPrincipal> cache;
+
+    public UserDetailsCache(@Value("${app.security.user-cache.max-size:10000}") long maxSize,
+                            @Value("${app.security.user-cache.ttl:60s}") Duration ttl) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+    }
+
+    @Override
+    public UserDetails getUserFromCache(String username) {
+        UserPrincipal user = cache.getIfPresent(username);
+        return user == null ? null : user.copy();
+    }
+
+    @Override
+    public void putUserInCache(UserDetails user) {
+        // Principals rebuilt from token claims have no password and must not be cached
+        if (user instanceof UserPrincipal principal && principal.getPassword() != null
+                && !principal.getPassword().isEmpty()) {
+            cache.put(principal.getUsername(), principal.copy());
+        }
+    }
+
+    @Override
+    public void removeUserFromCache(String username) {
+        cache.invalidate(username);
+    }
+
+    /**
+     * Hit, miss and eviction counters since startup.
+     */
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    public long size() {
+        return cache.estimatedSize();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onAccountChanged(UserAccountChangedEvent event) {
+        removeUserFromCache(event.username());
+    }
+}
@@ -0,0 +1,44 @@
+package com.kingtan.users.security;
+
+import lombok.Getter;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+
+import java.util.Collection;
+import java.util.stream.Collectors;
+
+/**
+ * Authenticated user carrying the database id and account-state version alongside the
+ * standard Spring Security user details.
+ */
+@Getter
+public class UserPrincipal extends User {
+
+    private final Long id;
+    private final long authVersion;
+
+    public UserPrincipal(Long id, String username, String password, boolean enabled, long authVersion,
+                         Collection<? extends GrantedAuthority> authorities) {
+        super(username, password, enabled, true, true, true, authorities);
+        this.id = id;
+        this.authVersion = authVersion;
+    }
+
+    /**
+     * Returns an independent copy, so that erasing the credentials of one does not affect the other.
+     */
+    public UserPrincipal copy() {
+        return new UserPrincipal(id, getUsername(), getPassword(), isEnabled(), authVersion, getAuthorities());
+    }
+
+    /**
+     * Rebuilds a principal from verified token claims. The password is never part of a token.
+     */
+    public static UserPrincipal fromClaims(JwtClaims claims) {
+        return new UserPrincipal(claims.userId(), claims.subject(), "", true, claims.authVersion(),
+                claims.roles().stream()
+                        .map(SimpleGrantedAuthority::new)
+                        .collect(Collectors.toList()));
+    }
+}
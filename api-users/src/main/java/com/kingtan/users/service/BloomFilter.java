@@ -0,0 +1,94 @@
+package com.kingtan.users.service;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongBinaryOperator;
+
+/**
+ * Fixed-size Bloom filter over strings.
+ * <p>
+ * Bits live in an {@link AtomicLongArray} and are only ever set, so concurrent {@link #put} and
+ * {@link #mightContain} calls need no lock and a reader can never see a bit disappear.
+ */
+final class BloomFilter {
+
+    private static final LongBinaryOperator OR = (word, mask) -> word | mask;
+
+    private final AtomicLongArray words;
+    private final long bitCount;
+    private final int hashCount;
+
+    private BloomFilter(int wordCount, int hashCount) {
+        this.words = new AtomicLongArray(wordCount);
+        this.bitCount = wordCount * 64L;
+        this.hashCount = hashCount;
+    }
+
+    /**
+     * Sizes a filter so that after {@code expectedInsertions} distinct values a lookup of an absent
+     * value reports a false positive with roughly the given probability.
+     */
+    static BloomFilter create(long expectedInsertions, double falsePositiveRate) {
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("False positive rate must be between 0 and 1: " + falsePositiveRate);
+        }
+        long n = Math.max(expectedInsertions, 1);
+        double ln2 = Math.log(2);
+        long bits = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (ln2 * ln2));
+        int wordCount = (int) Math.min((bits + 63) >>> 6, Integer.MAX_VALUE - 8);
+        int hashCount = Math.max(1, (int) Math.round(wordCount * 64.0 / n * ln2));
+        return new BloomFilter(wordCount, hashCount);
+    }
+
+    void put(String value) {
+        long h1 = hash64(value);
+        long h2 = fmix64(h1 ^ 0x9E3779B97F4A7C15L) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bitCount);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            if ((words.get(word) & mask) == 0) {
+                words.getAndAccumulate(word, mask, OR);
+            }
+        }
+    }
+
+    /** False means the value was never added; true means it probably was. */
+    boolean mightContain(String value) {
+        long h1 = hash64(value);
+        long h2 = fmix64(h1 ^ 0x9E3779B97F4A7C15L) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bitCount);
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    long bitCount() {
+        return bitCount;
+    }
+
+    int hashCount() {
+        return hashCount;
+    }
+
+    // 64-bit FNV-1a over the UTF-16 chars, finished with the MurmurHash3 mixer to spread the low bits
+    private static long hash64(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return fmix64(hash);
+    }
+
+    private static long fmix64(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
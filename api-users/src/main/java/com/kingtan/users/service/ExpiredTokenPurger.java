@@ -0,0 +1,102 @@
+package com.kingtan.users.service;
+
+import com.kingtan.users.repository.MailOutboxRepository;
+import com.kingtan.users.repository.PasswordResetTokenRepository;
+import com.kingtan.users.repository.TwoFactorCodeRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Periodically deletes expired password reset tokens, used or expired 2FA codes, and outbox mails
+ * that were given up more than {@code failed-mail-retention} ago.
+ * <p>
+ * Rows are removed with set-based {@code DELETE} statements of at most {@code chunk-size} rows,
+ * each committed on its own, so a large backlog never turns into one long transaction.
+ */
+@Component
+@ConditionalOnProperty(name = "app.purge.enabled", havingValue = "true", matchIfMissing = true)
+public class ExpiredTokenPurger {
+
+    private static final Logger log = LoggerFactory.getLogger(ExpiredTokenPurger.class);
+
+    private final PasswordResetTokenRepository tokenRepository;
+    private final TwoFactorCodeRepository twoFactorCodeRepository;
+    private final MailOutboxRepository mailOutboxRepository;
+    private final int chunkSize;
+    private final Duration failedMailRetention;
+
+    private final AtomicLong resetTokensPurged = new AtomicLong();
+    private final AtomicLong twoFactorCodesPurged = new AtomicLong();
+    private final AtomicLong failedMailsPurged = new AtomicLong();
+    private volatile long lastRunPurged;
+
+    public ExpiredTokenPurger(PasswordResetTokenRepository tokenRepository,
+                              TwoFactorCodeRepository twoFactorCodeRepository,
+                              MailOutboxRepository mailOutboxRepository,
+                              @Value("${app.purge.chunk-size:1000}") int chunkSize,
+                              @Value("${app.purge.failed-mail-retention:7d}") Duration failedMailRetention) {
+        this.tokenRepository = tokenRepository;
+        this.twoFactorCodeRepository = twoFactorCodeRepository;
+        this.mailOutboxRepository = mailOutboxRepository;
+        this.chunkSize = chunkSize;
+        this.failedMailRetention = failedMailRetention;
+    }
+
+    @Scheduled(fixedDelayString = "${app.purge.interval:15m}", initialDelayString = "${app.purge.initial-delay:1m}")
+    public void purge() {
+        long started = System.nanoTime();
+        LocalDateTime cutoff = LocalDateTime.now();
+
+        long tokens = deleteInChunks(limit -> tokenRepository.deleteExpiredChunk(cutoff, limit));
+        long codes = deleteInChunks(limit -> twoFactorCodeRepository.deleteExpiredChunk(cutoff, limit))
+                + deleteInChunks(twoFactorCodeRepository::deleteUsedChunk);
+        LocalDateTime failedCutoff = cutoff.minus(failedMailRetention);
+        long mails = deleteInChunks(limit -> mailOutboxRepository.deleteFailedChunk(failedCutoff, limit));
+
+        resetTokensPurged.addAndGet(tokens);
+        twoFactorCodesPurged.addAndGet(codes);
+        failedMailsPurged.addAndGet(mails);
+        lastRunPurged = tokens + codes + mails;
+        log.info("Purged {} password reset tokens, {} 2FA codes and {} failed mails in {} ms",
+                tokens, codes, mails, (System.nanoTime() - started) / 1_000_000);
+    }
+
+    private long deleteInChunks(IntUnaryOperator deleteChunk) {
+        long total = 0;
+        int deleted;
+        do {
+            deleted = deleteChunk.applyAsInt(chunkSize);
+            total += deleted;
+        } while (deleted == chunkSize);
+        return total;
+    }
+
+    /** Total password reset tokens deleted since startup. */
+    public long getResetTokensPurged() {
+        return resetTokensPurged.get();
+    }
+
+    /** Total 2FA codes deleted since startup. */
+    public long getTwoFactorCodesPurged() {
+        return twoFactorCodesPurged.get();
+    }
+
+    /** Total FAILED outbox mails deleted since startup. */
+    public long getFailedMailsPurged() {
+        return failedMailsPurged.get();
+    }
+
+    /** Rows deleted by the most recent run. */
+    public long getLastRunPurged() {
+        return lastRunPurged;
+    }
+}
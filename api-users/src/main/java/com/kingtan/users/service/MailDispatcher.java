@@ -0,0 +1,211 @@
+package com.kingtan.users.service;
+
+import com.kingtan.users.config.SchedulingConfig;
+import com.kingtan.users.model.MailOutbox;
+import com.kingtan.users.repository.MailOutboxRepository;
+import io.micrometer.observation.annotation.Observed;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.MimeMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.MimeMessageHelper;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Drains the mail outbox in the background.
+ * <p>
+ * Each batch goes through three steps, and no database connection is held during SMTP I/O:
+ * <ol>
+ *   <li>A short transaction claims due rows ({@code FOR UPDATE SKIP LOCKED}) and leases them by
+ *   moving {@code next_attempt_at} {@code claim-timeout} ahead, so other dispatchers skip them
+ *   after the commit.</li>
+ *   <li>All messages of the batch go out over a single SMTP connection, outside any transaction.</li>
+ *   <li>A second short transaction deletes the sent rows and reschedules failed ones with
+ *   exponential backoff until {@code max-attempts} is reached.</li>
+ * </ol>
+ * If the instance dies between the steps, the lease expires and the batch is sent again, so
+ * delivery is at least once. {@code claim-timeout} must exceed the time a full batch can take to
+ * send (batch size times the SMTP write timeout), or a slow batch may be claimed twice.
+ */
+@Component
+@ConditionalOnProperty(name = "app.mail.outbox.enabled", havingValue = "true", matchIfMissing = true)
+public class MailDispatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(MailDispatcher.class);
+
+    // Bodies can carry secrets such as reset tokens; abandoned rows keep only what explains the failure
+    static final String REDACTED_BODY = "[redacted after delivery failed]";
+
+    private final MailOutboxRepository outboxRepository;
+    private final JavaMailSender mailSender;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final Duration initialBackoff;
+    private final Duration maxBackoff;
+    private final Duration claimTimeout;
+
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder failedAttempts = new LongAdder();
+    private final LongAdder abandoned = new LongAdder();
+
+    public MailDispatcher(MailOutboxRepository outboxRepository,
+                          JavaMailSender mailSender,
+                          TransactionTemplate transactionTemplate,
+                          @Value("${app.mail.outbox.batch-size:50}") int batchSize,
+                          @Value("${app.mail.outbox.max-attempts:8}") int maxAttempts,
+                          @Value("${app.mail.outbox.initial-backoff:30s}") Duration initialBackoff,
+                          @Value("${app.mail.outbox.max-backoff:1h}") Duration maxBackoff,
+                          @Value("${app.mail.outbox.claim-timeout:15m}") Duration claimTimeout) {
+        this.outboxRepository = outboxRepository;
+        this.mailSender = mailSender;
+        this.transactionTemplate = transactionTemplate;
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+        this.claimTimeout = claimTimeout;
+    }
+
+    @Scheduled(fixedDelayString = "${app.mail.outbox.poll-interval:2s}", scheduler = SchedulingConfig.MAIL_SCHEDULER)
+    @Observed(name = "mail.dispatch")
+    public void dispatchPending() {
+        // Keep going while batches come back full; rescheduled mails are no longer due
+        int claimed;
+        do {
+            claimed = dispatchBatch();
+        } while (claimed == batchSize);
+    }
+
+    /**
+     * Claims, sends and settles one batch of due mails.
+     *
+     * @return the number of mails claimed
+     */
+    int dispatchBatch() {
+        LocalDateTime now = LocalDateTime.now();
+        List<MailOutbox> batch = transactionTemplate.execute(status -> claim(now));
+        if (batch == null || batch.isEmpty()) {
+            return 0;
+        }
+
+        Map<MailOutbox, Exception> failures = new IdentityHashMap<>();
+        // MimeMessage keeps identity equality, so a linked map matches messages by identity in batch order
+        Map<MimeMessage, MailOutbox> messages = new LinkedHashMap<>();
+        for (MailOutbox mail : batch) {
+            try {
+                messages.put(toMimeMessage(mail), mail);
+            } catch (MessagingException e) {
+                failures.put(mail, e);
+            }
+        }
+
+        Map<Object, Exception> rejected = Map.of();
+        try {
+            mailSender.send(messages.keySet().toArray(MimeMessage[]::new));
+        } catch (MailSendException e) {
+            rejected = e.getFailedMessages().isEmpty() ? allFailed(messages, e) : e.getFailedMessages();
+        } catch (MailException e) {
+            rejected = allFailed(messages, e);
+        }
+
+        List<Long> sentIds = new ArrayList<>();
+        for (Map.Entry<MimeMessage, MailOutbox> entry : messages.entrySet()) {
+            Exception failure = rejected.get(entry.getKey());
+            if (failure == null) {
+                sentIds.add(entry.getValue().getId());
+            } else {
+                failures.put(entry.getValue(), failure);
+            }
+        }
+
+        LocalDateTime settledAt = LocalDateTime.now();
+        transactionTemplate.executeWithoutResult(status -> {
+            if (!sentIds.isEmpty()) {
+                outboxRepository.deleteAllByIdInBatch(sentIds);
+            }
+            failures.forEach((mail, failure) -> reschedule(mail, failure, settledAt));
+        });
+        sent.add(sentIds.size());
+        return batch.size();
+    }
+
+    private List<MailOutbox> claim(LocalDateTime now) {
+        List<MailOutbox> batch = outboxRepository.claimDue(now, batchSize);
+        // Flushed on commit; the rows stay invisible to claimDue until the lease runs out
+        LocalDateTime leaseEnd = now.plus(claimTimeout);
+        batch.forEach(mail -> mail.setNextAttemptAt(leaseEnd));
+        return batch;
+    }
+
+    private MimeMessage toMimeMessage(MailOutbox mail) throws MessagingException {
+        MimeMessage message = mailSender.createMimeMessage();
+        MimeMessageHelper helper = new MimeMessageHelper(message);
+        helper.setTo(mail.getRecipient());
+        helper.setSubject(mail.getSubject());
+        helper.setText(mail.getBody());
+        return message;
+    }
+
+    private void reschedule(MailOutbox mail, Exception failure, LocalDateTime now) {
+        int attempts = mail.getAttempts() + 1;
+        mail.setAttempts(attempts);
+        String error = String.valueOf(failure.getMessage());
+        mail.setLastError(error.length() > 500 ? error.substring(0, 500) : error);
+        failedAttempts.increment();
+        if (attempts >= maxAttempts) {
+            mail.setStatus(MailOutbox.Status.FAILED);
+            mail.setBody(REDACTED_BODY);
+            // Records when the row was given up; retention of FAILED rows counts from here
+            mail.setNextAttemptAt(now);
+            abandoned.increment();
+            log.error("Giving up on mail {} after {} attempts", mail.getId(), attempts, failure);
+        } else {
+            mail.setNextAttemptAt(now.plus(backoff(attempts)));
+            log.warn("Mail {} failed (attempt {}), retrying: {}", mail.getId(), attempts, error);
+        }
+        outboxRepository.save(mail);
+    }
+
+    Duration backoff(int attempts) {
+        Duration delay = initialBackoff.multipliedBy(1L << Math.min(attempts - 1, 20));
+        return delay.compareTo(maxBackoff) > 0 ? maxBackoff : delay;
+    }
+
+    /** Mails delivered since startup. */
+    public long getSentCount() {
+        return sent.sum();
+    }
+
+    /** Delivery attempts that failed since startup, including those that will be retried. */
+    public long getFailedAttemptCount() {
+        return failedAttempts.sum();
+    }
+
+    /** Mails marked FAILED after their last attempt since startup. */
+    public long getAbandonedCount() {
+        return abandoned.sum();
+    }
+
+    private static Map<Object, Exception> allFailed(Map<MimeMessage, MailOutbox> messages, Exception e) {
+        Map<Object, Exception> failures = new IdentityHashMap<>();
+        messages.keySet().forEach(message -> failures.put(message, e));
+        return failures;
+    }
+}
@@ -0,0 +1,36 @@
+package com.kingtan.users.service;
+
+import com.kingtan.users.model.MailOutbox;
+import com.kingtan.users.repository.MailOutboxRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+
+@Service
+public class MailOutboxService {
+
+    private final MailOutboxRepository outboxRepository;
+
+    @Autowired
+    public MailOutboxService(MailOutboxRepository outboxRepository) {
+        this.outboxRepository = outboxRepository;
+    }
+
+    /**
+     * Queues a plain-text email. Joins the caller's transaction, so the mail is only sent if the
+     * data it refers to is committed; delivery happens later in {@link MailDispatcher}.
+     */
+    @Transactional
+    public MailOutbox enqueue(String to, String subject, String body) {
+        LocalDateTime now = LocalDateTime.now();
+        MailOutbox mail = new MailOutbox();
+        mail.setRecipient(to);
+        mail.setSubject(subject);
+        mail.setBody(body);
+        mail.setCreatedAt(now);
+        mail.setNextAttemptAt(now);
+        return outboxRepository.save(mail);
+    }
+}
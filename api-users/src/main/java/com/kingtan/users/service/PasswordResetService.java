@@ -4,64 +4,69 @@ import com.kingtan.users.model.PasswordResetToken;
 import com.kingtan.users.model.User;
 import com.kingtan.users.repository.PasswordResetTokenRepository;
 import com.kingtan.users.repository.UserRepository;
+import io.micrometer.observation.annotation.Observed;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.mail.javamail.JavaMailSender;
-import org.springframework.mail.javamail.MimeMessageHelper;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import jakarta.mail.MessagingException;
-import jakarta.mail.internet.MimeMessage;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.LocalDateTime;
+import java.util.HexFormat;
 import java.util.UUID;
 
 @Service
+@Observed(name = "users.password_reset")
 public class PasswordResetService {
 
     private final UserRepository userRepository;
     private final PasswordResetTokenRepository tokenRepository;
-    private final JavaMailSender mailSender;
+    private final MailOutboxService mailOutbox;
     private final PasswordEncoder passwordEncoder; // Add PasswordEncoder field
+    private final ApplicationEventPublisher eventPublisher;
+    private final UserExistenceFilter userExistenceFilter;
 
     @Autowired
     public PasswordResetService(UserRepository userRepository,
                                 PasswordResetTokenRepository tokenRepository,
-                                JavaMailSender mailSender,
-                                PasswordEncoder passwordEncoder) { // Inject PasswordEncoder
+                                MailOutboxService mailOutbox,
+                                PasswordEncoder passwordEncoder, // Inject PasswordEncoder
+                                ApplicationEventPublisher eventPublisher,
+                                UserExistenceFilter userExistenceFilter) {
         this.userRepository = userRepository;
         this.tokenRepository = tokenRepository;
-        this.mailSender = mailSender;
+        this.mailOutbox = mailOutbox;
         this.passwordEncoder = passwordEncoder;
+        this.eventPublisher = eventPublisher;
+        this.userExistenceFilter = userExistenceFilter;
     }
 
     @Transactional
-    public void createPasswordResetToken(String email) throws MessagingException {
+    public void createPasswordResetToken(String email) {
+        if (!userExistenceFilter.mightContainEmail(email)) {
+            throw new RuntimeException("User not found");
+        }
         User user = userRepository.findByEmail(email)
                 .orElseThrow(() -> new RuntimeException("User not found"));
 
         String token = UUID.randomUUID().toString();
         PasswordResetToken resetToken = new PasswordResetToken();
-        resetToken.setToken(token);
+        resetToken.setTokenHash(hashToken(token));
         resetToken.setUser(user);
         resetToken.setExpiryDate(LocalDateTime.now().plusHours(1));
         tokenRepository.save(resetToken);
 
-        sendEmail(user.getEmail(), token);
-    }
-
-    private void sendEmail(String to, String token) throws MessagingException {
-        MimeMessage message = mailSender.createMimeMessage();
-        MimeMessageHelper helper = new MimeMessageHelper(message);
-        helper.setTo(to);
-        helper.setSubject("Password Reset Request");
-        helper.setText("Use this token to reset your password: " + token);
-        mailSender.send(message);
+        // Committed together with the token and sent in the background by MailDispatcher
+        mailOutbox.enqueue(user.getEmail(), "Password Reset Request",
+                "Use this token to reset your password: " + token);
     }
 
     @Transactional
     public void resetPassword(String token, String newPassword) {
-        PasswordResetToken resetToken = tokenRepository.findByToken(token)
+        PasswordResetToken resetToken = tokenRepository.findByTokenHash(hashToken(token))
                 .orElseThrow(() -> new RuntimeException("Invalid token"));
         if (resetToken.getExpiryDate().isBefore(LocalDateTime.now())) {
             throw new RuntimeException("Token expired");
@@ -69,7 +74,27 @@ public class PasswordResetService {
 
         User user = resetToken.getUser();
         user.setPassword(passwordEncoder.encode(newPassword));
+        // Invalidate every token issued with the old password
+        user.setAuthVersion(user.getAuthVersion() + 1);
         userRepository.save(user);
         tokenRepository.delete(resetToken);
+        eventPublisher.publishEvent(new UserAccountChangedEvent(user.getUsername()));
+    }
+
+    /**
+     * Tokens are looked up by their SHA-256 through the unique index on {@code token_hash}, so the
+     * {@code password_reset_token} table holds no usable tokens and the lookup stays an index seek.
+     * The plaintext only lives in the queued reset mail until it is sent or abandoned, see
+     * {@link com.kingtan.users.model.MailOutbox}. Hashing is also what keeps the index lookup from
+     * leaking the token through timing: how far a guess matches a stored hash says nothing about
+     * how far it matches the token.
+     */
+    static String hashToken(String token) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
     }
 }
@@ -0,0 +1,85 @@
+package com.kingtan.users.service;
+
+import com.kingtan.users.model.Role;
+import com.kingtan.users.repository.RoleRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Application-scoped view of the roles table, which is tiny and only seeded by data.sql.
+ * <p>
+ * Resolves role names without a query. The returned roles are detached but carry their ids,
+ * which is all a user's role association needs to be written. The table is loaded at startup and
+ * on {@link #refresh()}. A name that is not known triggers a reload, so newly added roles are
+ * picked up, but at most once per {@code app.roles.min-reload-interval}: until then unknown names
+ * are answered from memory, so requests naming bogus roles cannot each scan the table.
+ */
+@Component
+public class RoleRegistry {
+
+    private final RoleRepository roleRepository;
+    private final long minReloadNanos;
+    private final ReentrantLock reloadLock = new ReentrantLock();
+
+    private record Snapshot(Map<String, Role> rolesByName, long loadedAt) {}
+
+    private volatile Snapshot snapshot;
+
+    @Autowired
+    public RoleRegistry(RoleRepository roleRepository,
+                        @Value("${app.roles.min-reload-interval:30s}") Duration minReloadInterval) {
+        this.roleRepository = roleRepository;
+        this.minReloadNanos = minReloadInterval.toNanos();
+    }
+
+    public Optional<Role> findByName(String name) {
+        Snapshot current = snapshot;
+        if (current != null) {
+            Role role = current.rolesByName().get(name);
+            if (role != null || !reloadDue(current)) {
+                return Optional.ofNullable(role);
+            }
+        }
+        // One caller reloads; concurrent misses wait for it and read its result
+        reloadLock.lock();
+        try {
+            if (snapshot == current) {
+                load();
+            }
+            return Optional.ofNullable(snapshot.rolesByName().get(name));
+        } finally {
+            reloadLock.unlock();
+        }
+    }
+
+    /** Reloads the roles table unconditionally. */
+    @EventListener(ApplicationReadyEvent.class)
+    public void refresh() {
+        reloadLock.lock();
+        try {
+            load();
+        } finally {
+            reloadLock.unlock();
+        }
+    }
+
+    private boolean reloadDue(Snapshot current) {
+        return System.nanoTime() - current.loadedAt() >= minReloadNanos;
+    }
+
+    private void load() {
+        Map<String, Role> roles = roleRepository.findAll().stream()
+                .collect(Collectors.toUnmodifiableMap(Role::getName, Function.identity()));
+        snapshot = new Snapshot(roles, System.nanoTime());
+    }
+}
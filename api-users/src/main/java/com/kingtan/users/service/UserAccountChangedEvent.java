@@ -0,0 +1,7 @@
+package com.kingtan.users.service;
+
+/**
+ * Published when a user's credentials, roles or identity change, so that anything holding
+ * per-user security state (caches, token version registry) can drop it after commit.
+ */
+public record UserAccountChangedEvent(String username) {}
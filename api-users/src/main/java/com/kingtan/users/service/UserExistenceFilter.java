@@ -0,0 +1,195 @@
+package com.kingtan.users.service;
+
+import com.kingtan.users.repository.UserKeys;
+import com.kingtan.users.repository.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In-memory Bloom filters of every username and email in the users table, so lookups of accounts
+ * that do not exist (credential stuffing, typos, reset requests for foreign addresses) are answered
+ * without a database round trip.
+ * <p>
+ * A negative answer is exact for every user this instance has seen; a positive answer may be a
+ * false positive and falls through to the database as before. The filters are built with a keyset
+ * scan once the application is ready and updated as this instance registers or renames users.
+ * Users created or renamed on other instances are picked up by a periodic scan of rows whose
+ * {@code updated_at} is recent, so such an account can be reported missing here for up to
+ * {@code refresh-interval}. The scan is keyed on time rather than id because pooled ids are handed
+ * out in per-instance blocks and a rename keeps its id. Each scan starts {@code refresh-overlap}
+ * before the previous one, which must cover clock skew between instances and the longest
+ * transaction writing users. Bloom filters cannot
+ * forget, so deleted or renamed-away names stay members until the next full rebuild, which also
+ * resizes the filters as the table grows.
+ * <p>
+ * Until the first build completes, and when disabled, every name is reported as possibly present.
+ */
+@Component
+public class UserExistenceFilter {
+
+    private static final Logger log = LoggerFactory.getLogger(UserExistenceFilter.class);
+
+    private final UserRepository userRepository;
+    private final boolean enabled;
+    private final long expectedUsers;
+    private final double falsePositiveRate;
+    private final int pageSize;
+    private final Duration refreshOverlap;
+
+    private final ReentrantLock scanLock = new ReentrantLock();
+    private final LongAdder shortCircuited = new LongAdder();
+    private volatile Filters current;
+    private volatile Filters rebuilding;
+    private LocalDateTime lastScanStarted;
+
+    private record Filters(BloomFilter usernames, BloomFilter emails) {
+
+        static Filters create(long expectedUsers, double falsePositiveRate) {
+            return new Filters(BloomFilter.create(expectedUsers, falsePositiveRate),
+                    BloomFilter.create(expectedUsers, falsePositiveRate));
+        }
+
+        void add(String username, String email) {
+            if (username != null) {
+                usernames.put(username);
+            }
+            if (email != null) {
+                emails.put(email);
+            }
+        }
+    }
+
+    public UserExistenceFilter(UserRepository userRepository,
+                               @Value("${app.security.user-filter.enabled:true}") boolean enabled,
+                               @Value("${app.security.user-filter.expected-users:100000}") long expectedUsers,
+                               @Value("${app.security.user-filter.false-positive-rate:0.01}") double falsePositiveRate,
+                               @Value("${app.security.user-filter.page-size:5000}") int pageSize,
+                               @Value("${app.security.user-filter.refresh-overlap:1m}") Duration refreshOverlap) {
+        this.userRepository = userRepository;
+        this.enabled = enabled;
+        this.expectedUsers = expectedUsers;
+        this.falsePositiveRate = falsePositiveRate;
+        this.pageSize = pageSize;
+        this.refreshOverlap = refreshOverlap;
+    }
+
+    /** Returns false only if no user with this username exists. */
+    public boolean mightContainUsername(String username) {
+        Filters filters = current;
+        if (filters == null || username == null || filters.usernames().mightContain(username)) {
+            return true;
+        }
+        shortCircuited.increment();
+        return false;
+    }
+
+    /** Returns false only if no user with this email exists. */
+    public boolean mightContainEmail(String email) {
+        Filters filters = current;
+        if (filters == null || email == null || filters.emails().mightContain(email)) {
+            return true;
+        }
+        shortCircuited.increment();
+        return false;
+    }
+
+    /**
+     * Records a user saved by this instance. Call before the transaction commits, so the user is
+     * never reported missing once it is visible; a rollback only leaves a harmless false positive.
+     */
+    public void addUser(String username, String email) {
+        Filters filters = current;
+        if (filters != null) {
+            filters.add(username, email);
+        }
+        Filters next = rebuilding;
+        if (next != null) {
+            next.add(username, email);
+        }
+    }
+
+    /** Builds fresh filters sized for the current table and swaps them in. */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${app.security.user-filter.rebuild-interval:6h}",
+            initialDelayString = "${app.security.user-filter.rebuild-interval:6h}")
+    public void rebuild() {
+        if (!enabled) {
+            return;
+        }
+        scanLock.lock();
+        try {
+            long started = System.nanoTime();
+            LocalDateTime scanStarted = LocalDateTime.now();
+            // Twice the current count leaves room for growth until the next rebuild
+            Filters next = Filters.create(Math.max(userRepository.count() * 2, expectedUsers), falsePositiveRate);
+            rebuilding = next;
+            long lastId = 0L;
+            List<UserKeys> page;
+            do {
+                page = userRepository.findKeysAfter(lastId, Limit.of(pageSize));
+                lastId = addAll(next, page, lastId);
+            } while (page.size() == pageSize);
+            current = next;
+            lastScanStarted = scanStarted;
+            log.info("Built user existence filter ({} bits, {} hashes) in {} ms",
+                    next.usernames().bitCount(), next.usernames().hashCount(),
+                    (System.nanoTime() - started) / 1_000_000);
+        } finally {
+            rebuilding = null;
+            scanLock.unlock();
+        }
+    }
+
+    /** Adds users created or renamed since the last scan, including those saved by other instances. */
+    @Scheduled(fixedDelayString = "${app.security.user-filter.refresh-interval:10s}",
+            initialDelayString = "${app.security.user-filter.refresh-interval:10s}")
+    public void refresh() {
+        Filters filters = current;
+        if (filters == null || !scanLock.tryLock()) {
+            return;
+        }
+        try {
+            LocalDateTime scanStarted = LocalDateTime.now();
+            LocalDateTime since = lastScanStarted.minus(refreshOverlap);
+            long lastId = 0L;
+            List<UserKeys> page;
+            do {
+                page = userRepository.findKeysChangedSince(since, lastId, Limit.of(pageSize));
+                lastId = addAll(filters, page, lastId);
+            } while (page.size() == pageSize);
+            lastScanStarted = scanStarted;
+        } finally {
+            scanLock.unlock();
+        }
+    }
+
+    private static long addAll(Filters filters, List<UserKeys> page, long lastId) {
+        for (UserKeys keys : page) {
+            filters.add(keys.username(), keys.email());
+            lastId = keys.id();
+        }
+        return lastId;
+    }
+
+    /** Whether the filters have been built and are answering lookups. */
+    public boolean isReady() {
+        return current != null;
+    }
+
+    /** Lookups answered as definite misses since startup. */
+    public long getShortCircuitedLookups() {
+        return shortCircuited.sum();
+    }
+}
@@ -0,0 +1,25 @@
+package com.kingtan.users.service;
+
+/**
+ * File formats accepted by the bulk import and produced by the export.
+ */
+public enum UserFileFormat {
+    CSV("text/csv", "csv"),
+    NDJSON("application/x-ndjson", "ndjson");
+
+    private final String mediaType;
+    private final String extension;
+
+    UserFileFormat(String mediaType, String extension) {
+        this.mediaType = mediaType;
+        this.extension = extension;
+    }
+
+    public String mediaType() {
+        return mediaType;
+    }
+
+    public String extension() {
+        return extension;
+    }
+}
@@ -0,0 +1,361 @@
+package com.kingtan.users.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kingtan.users.dto.ImportResult;
+import com.kingtan.users.dto.SignupRequest;
+import com.kingtan.users.model.Role;
+import com.kingtan.users.model.User;
+import com.kingtan.users.repository.UserKeys;
+import com.kingtan.users.repository.UserRepository;
+import jakarta.annotation.PreDestroy;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Creates users in bulk from a CSV or newline-delimited JSON stream.
+ * <p>
+ * The input is read line by line and written in chunks of {@code chunk-size} rows, so memory use
+ * does not depend on the size of the file. Each row is validated like a {@link SignupRequest}, and
+ * rows that clash with existing users or with earlier rows are rejected before their password is
+ * hashed. The remaining passwords of a chunk are hashed in parallel on a pool of their own, so an
+ * import cannot starve logins, and the chunk is inserted in one transaction as JDBC batches. If a
+ * concurrent signup still trips a unique constraint, the chunk is retried row by row so that only
+ * the conflicting rows are rejected.
+ */
+@Service
+public class UserImportService {
+
+    private static final Logger log = LoggerFactory.getLogger(UserImportService.class);
+
+    private final UserRepository userRepository;
+    private final RoleRegistry roleRegistry;
+    private final PasswordEncoder passwordEncoder;
+    private final Validator validator;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final UserExistenceFilter userExistenceFilter;
+    private final int chunkSize;
+    private final int maxErrors;
+    private final ExecutorService hashingPool;
+
+    private record Row(long line, SignupRequest request) {
+    }
+
+    @Autowired
+    public UserImportService(UserRepository userRepository,
+                             RoleRegistry roleRegistry,
+                             PasswordEncoder passwordEncoder,
+                             Validator validator,
+                             ObjectMapper objectMapper,
+                             TransactionTemplate transactionTemplate,
+                             UserExistenceFilter userExistenceFilter,
+                             @Value("${app.users.import.chunk-size:1000}") int chunkSize,
+                             @Value("${app.users.import.hashing-threads:0}") int hashingThreads,
+                             @Value("${app.users.import.max-errors:1000}") int maxErrors) {
+        this.userRepository = userRepository;
+        this.roleRegistry = roleRegistry;
+        this.passwordEncoder = passwordEncoder;
+        this.validator = validator;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = transactionTemplate;
+        this.userExistenceFilter = userExistenceFilter;
+        this.chunkSize = chunkSize;
+        this.maxErrors = maxErrors;
+        // Half the cores by default, leaving the rest to the login hashing pool
+        int poolSize = hashingThreads > 0 ? hashingThreads : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        AtomicInteger threadCount = new AtomicInteger();
+        this.hashingPool = Executors.newFixedThreadPool(poolSize, runnable -> {
+            Thread thread = new Thread(runnable, "user-import-hash-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Imports every row of {@code input}. CSV input needs a header line naming the
+     * {@code username}, {@code email} and {@code password} columns, in any order.
+     */
+    public ImportResult importUsers(InputStream input, UserFileFormat format) throws IOException {
+        Role userRole = roleRegistry.findByName("ROLE_USER")
+                .orElseThrow(() -> new RuntimeException("Role not found"));
+        long started = System.nanoTime();
+        Progress progress = new Progress(maxErrors);
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        long lineNumber = 0;
+        CsvColumns columns = null;
+        if (format == UserFileFormat.CSV) {
+            lineNumber++;
+            columns = CsvColumns.fromHeader(reader.readLine());
+            if (columns == null) {
+                progress.reject(lineNumber, "CSV header must name the username, email and password columns");
+                return progress.result();
+            }
+        }
+
+        List<Row> chunk = new ArrayList<>(chunkSize);
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank()) {
+                continue;
+            }
+            SignupRequest request;
+            try {
+                request = columns != null ? columns.parse(line) : objectMapper.readValue(line, SignupRequest.class);
+            } catch (JsonProcessingException e) {
+                progress.reject(lineNumber, "Malformed row: " + e.getOriginalMessage());
+                continue;
+            } catch (IllegalArgumentException e) {
+                progress.reject(lineNumber, "Malformed row: " + e.getMessage());
+                continue;
+            }
+            String violations = validate(request);
+            if (violations != null) {
+                progress.reject(lineNumber, violations);
+                continue;
+            }
+            chunk.add(new Row(lineNumber, request));
+            if (chunk.size() == chunkSize) {
+                writeChunk(chunk, userRole, progress);
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            writeChunk(chunk, userRole, progress);
+        }
+
+        ImportResult result = progress.result();
+        log.info("Imported {} users ({} rejected) in {} ms",
+                result.imported(), result.failed(), (System.nanoTime() - started) / 1_000_000);
+        return result;
+    }
+
+    private String validate(SignupRequest request) {
+        Set<ConstraintViolation<SignupRequest>> violations = validator.validate(request);
+        if (violations.isEmpty()) {
+            return null;
+        }
+        return violations.stream()
+                .map(ConstraintViolation::getMessage)
+                .sorted()
+                .collect(Collectors.joining("; "));
+    }
+
+    private void writeChunk(List<Row> chunk, Role role, Progress progress) {
+        // Names repeated within the chunk; earlier chunks are committed and found by the query below
+        Set<String> usernames = new HashSet<>();
+        Set<String> emails = new HashSet<>();
+        List<Row> unique = new ArrayList<>(chunk.size());
+        for (Row row : chunk) {
+            if (usernames.contains(row.request().username())) {
+                progress.reject(row.line(), "Username is already taken");
+            } else if (emails.contains(row.request().email())) {
+                progress.reject(row.line(), "Email is already in use");
+            } else {
+                usernames.add(row.request().username());
+                emails.add(row.request().email());
+                unique.add(row);
+            }
+        }
+
+        Set<String> takenUsernames = new HashSet<>();
+        Set<String> takenEmails = new HashSet<>();
+        for (UserKeys existing : userRepository.findKeysByUsernameInOrEmailIn(usernames, emails)) {
+            takenUsernames.add(existing.username());
+            takenEmails.add(existing.email());
+        }
+        List<Row> accepted = new ArrayList<>(unique.size());
+        for (Row row : unique) {
+            if (takenUsernames.contains(row.request().username())) {
+                progress.reject(row.line(), "Username is already taken");
+            } else if (takenEmails.contains(row.request().email())) {
+                progress.reject(row.line(), "Email is already in use");
+            } else {
+                accepted.add(row);
+            }
+        }
+        if (accepted.isEmpty()) {
+            return;
+        }
+
+        List<String> hashes = hashPasswords(accepted);
+        List<User> users = new ArrayList<>(accepted.size());
+        for (int i = 0; i < accepted.size(); i++) {
+            users.add(newUser(accepted.get(i).request(), hashes.get(i), role));
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                userRepository.saveAll(users);
+                users.forEach(user -> userExistenceFilter.addUser(user.getUsername(), user.getEmail()));
+            });
+            progress.imported(users.size());
+        } catch (DataIntegrityViolationException e) {
+            // A concurrent signup took one of the names; insert one by one to find which
+            for (int i = 0; i < accepted.size(); i++) {
+                User user = newUser(accepted.get(i).request(), hashes.get(i), role);
+                try {
+                    transactionTemplate.executeWithoutResult(status -> {
+                        userRepository.saveAndFlush(user);
+                        userExistenceFilter.addUser(user.getUsername(), user.getEmail());
+                    });
+                    progress.imported(1);
+                } catch (DataIntegrityViolationException rowError) {
+                    progress.reject(accepted.get(i).line(), UserService.toConflict(rowError).getMessage());
+                }
+            }
+        }
+    }
+
+    private List<String> hashPasswords(List<Row> rows) {
+        List<Future<String>> futures = new ArrayList<>(rows.size());
+        for (Row row : rows) {
+            String password = row.request().password();
+            futures.add(hashingPool.submit(() -> passwordEncoder.encode(password)));
+        }
+        List<String> hashes = new ArrayList<>(rows.size());
+        try {
+            for (Future<String> future : futures) {
+                hashes.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            futures.forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while hashing imported passwords", e);
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            throw new IllegalStateException("Password hashing failed", e.getCause());
+        }
+        return hashes;
+    }
+
+    private static User newUser(SignupRequest request, String passwordHash, Role role) {
+        User user = new User();
+        user.setUsername(request.username());
+        user.setEmail(request.email());
+        user.setPassword(passwordHash);
+        user.setRoles(new HashSet<>(Set.of(role)));
+        return user;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        hashingPool.shutdownNow();
+    }
+
+    /** Positions of the signup fields in a CSV row, taken from the header line. */
+    record CsvColumns(int username, int email, int password) {
+
+        static CsvColumns fromHeader(String header) {
+            if (header == null) {
+                return null;
+            }
+            List<String> names = parseLine(header.replace("\uFEFF", "")).stream()
+                    .map(name -> name.trim().toLowerCase(Locale.ROOT))
+                    .toList();
+            int username = names.indexOf("username");
+            int email = names.indexOf("email");
+            int password = names.indexOf("password");
+            return username < 0 || email < 0 || password < 0 ? null : new CsvColumns(username, email, password);
+        }
+
+        SignupRequest parse(String line) {
+            List<String> fields = parseLine(line);
+            int required = Math.max(username, Math.max(email, password)) + 1;
+            if (fields.size() < required) {
+                throw new IllegalArgumentException("expected " + required + " columns but found " + fields.size());
+            }
+            return new SignupRequest(fields.get(username), fields.get(email), fields.get(password));
+        }
+
+        /** Splits one RFC 4180 line; fields may be quoted, with {@code ""} for a literal quote. */
+        static List<String> parseLine(String line) {
+            List<String> fields = new ArrayList<>();
+            StringBuilder field = new StringBuilder();
+            boolean quoted = false;
+            for (int i = 0; i < line.length(); i++) {
+                char c = line.charAt(i);
+                if (quoted) {
+                    if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        field.append('"');
+                        i++;
+                    } else if (c == '"') {
+                        quoted = false;
+                    } else {
+                        field.append(c);
+                    }
+                } else if (c == '"') {
+                    quoted = true;
+                } else if (c == ',') {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                } else {
+                    field.append(c);
+                }
+            }
+            if (quoted) {
+                throw new IllegalArgumentException("unterminated quoted field");
+            }
+            fields.add(field.toString());
+            return fields;
+        }
+    }
+
+    private static final class Progress {
+
+        private final int maxErrors;
+        private final List<ImportResult.RowError> errors = new ArrayList<>();
+        private long imported;
+        private long failed;
+
+        Progress(int maxErrors) {
+            this.maxErrors = maxErrors;
+        }
+
+        void imported(int count) {
+            imported += count;
+        }
+
+        void reject(long line, String message) {
+            failed++;
+            if (errors.size() < maxErrors) {
+                errors.add(new ImportResult.RowError(line, message));
+            }
+        }
+
+        ImportResult result() {
+            // Duplicates are found a chunk after validation errors, so restore file order
+            List<ImportResult.RowError> sorted = errors.stream()
+                    .sorted(Comparator.comparingLong(ImportResult.RowError::line))
+                    .toList();
+            return new ImportResult(imported, failed, sorted, failed > errors.size());
+        }
+    }
+}
@@ -1,96 +1,298 @@
 package com.kingtan.users.service;
 
 import com.kingtan.users.dto.SignupRequest;
+import com.kingtan.users.dto.UserBatchResponse;
 import com.kingtan.users.dto.UserDTO;
 import com.kingtan.users.model.Role;
 import com.kingtan.users.model.User;
-import com.kingtan.users.repository.RoleRepository;
 import com.kingtan.users.repository.UserRepository;
+import com.kingtan.users.repository.UserSummary;
+import com.kingtan.users.repository.UserVersion;
+import io.micrometer.observation.annotation.Observed;
+import org.hibernate.exception.ConstraintViolationException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Limit;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
+@Observed(name = "users.service")
 public class UserService {
 
     private final UserRepository userRepository;
-    private final RoleRepository roleRepository;
+    private final RoleRegistry roleRegistry;
     private final PasswordEncoder passwordEncoder;
+    private final ApplicationEventPublisher eventPublisher;
+    private final UserExistenceFilter userExistenceFilter;
+
+    // Concurrent reads of the same profile (polling clients, cart renders) share one query
+    private final RequestCoalescer<String, Optional<UserSummary>> summaryLookups = new RequestCoalescer<>();
+    private final RequestCoalescer<String, Optional<UserVersion>> versionLookups = new RequestCoalescer<>();
+
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    public static final int MAX_PAGE_SIZE = 200;
+    public static final int MAX_BATCH_SIZE = 200;
 
     @Autowired
-    public UserService(UserRepository userRepository, RoleRepository roleRepository, PasswordEncoder passwordEncoder) {
+    public UserService(UserRepository userRepository, RoleRegistry roleRegistry, PasswordEncoder passwordEncoder,
+                       ApplicationEventPublisher eventPublisher, UserExistenceFilter userExistenceFilter) {
         this.userRepository = userRepository;
-        this.roleRepository = roleRepository;
+        this.roleRegistry = roleRegistry;
         this.passwordEncoder = passwordEncoder;
+        this.eventPublisher = eventPublisher;
+        this.userExistenceFilter = userExistenceFilter;
     }
 
+    /**
+     * Inserts the user and its role link in one flush. Duplicates are not checked up front but
+     * detected by the unique constraints, which also keeps concurrent signups for the same name safe.
+     */
     @Transactional
     public UserDTO registerUser(SignupRequest request) {
-        if (userRepository.existsByUsername(request.username())) {
-            throw new RuntimeException("Username is already taken");
-        }
-        if (userRepository.existsByEmail(request.email())) {
-            throw new RuntimeException("Email is already in use");
-        }
-
         User user = new User();
         user.setUsername(request.username());
         user.setEmail(request.email());
         user.setPassword(passwordEncoder.encode(request.password()));
 
         // Assign default role (e.g., ROLE_USER)
-        Role userRole = roleRepository.findByName("ROLE_USER")
+        Role userRole = roleRegistry.findByName("ROLE_USER")
                 .orElseThrow(() -> new RuntimeException("Role not found"));
         user.setRoles(new HashSet<>(Set.of(userRole)));
 
-        user = userRepository.save(user);
+        try {
+            user = userRepository.saveAndFlush(user);
+        } catch (DataIntegrityViolationException e) {
+            throw toConflict(e);
+        }
+        userExistenceFilter.addUser(user.getUsername(), user.getEmail());
         return mapToDTO(user);
     }
 
+    // Maps a unique constraint violation on users to the message the API has always returned
+    static RuntimeException toConflict(DataIntegrityViolationException e) {
+        String violated = e.getCause() instanceof ConstraintViolationException violation
+                && violation.getConstraintName() != null
+                ? violation.getConstraintName()
+                : String.valueOf(e.getMostSpecificCause().getMessage());
+        violated = violated.toLowerCase(Locale.ROOT);
+        if (violated.contains(User.USERNAME_CONSTRAINT)) {
+            return new RuntimeException("Username is already taken");
+        }
+        if (violated.contains(User.EMAIL_CONSTRAINT)) {
+            return new RuntimeException("Email is already in use");
+        }
+        return e;
+    }
+
     public UserDTO findByUsername(String username) {
-        User user = userRepository.findByUsername(username)
+        return findVersionedByUsername(username).body();
+    }
+
+    /** The user with the entity tag of the row it was read from. */
+    public Versioned<UserDTO> findVersionedByUsername(String username) {
+        return summaryLookups.load(username, () -> userRepository.findSummaryByUsername(username))
+                .map(summary -> new Versioned<>(summary.toDTO(), userETag(summary.id(), summary.version())))
                 .orElseThrow(() -> new RuntimeException("User not found"));
-        return mapToDTO(user);
     }
 
-    public List<UserDTO> findAllUsers() {
-        return userRepository.findAll().stream()
-                .map(this::mapToDTO)
+    /**
+     * Current entity tag of the user, read from the id and version columns only, or empty if there
+     * is no such user. Lets an unchanged representation be revalidated without building it.
+     */
+    public Optional<String> findUserETag(String username) {
+        return versionLookups.load(username, () -> userRepository.findVersionByUsername(username))
+                .map(version -> userETag(version.id(), version.version()));
+    }
+
+    /**
+     * Resolves users by id and by username with a single query. Keys that match no user are left
+     * out of the result; usernames the existence filter rules out are not even sent to the database.
+     */
+    public UserBatchResponse findUsers(Collection<Long> ids, Collection<String> usernames) {
+        Set<Long> idKeys = ids == null ? Set.of() : ids.stream()
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        Set<String> usernameKeys = usernames == null ? Set.of() : usernames.stream()
+                .filter(Objects::nonNull)
+                .filter(userExistenceFilter::mightContainUsername)
+                .collect(Collectors.toSet());
+        Map<Long, UserDTO> byId = new LinkedHashMap<>();
+        Map<String, UserDTO> byUsername = new LinkedHashMap<>();
+        if (idKeys.isEmpty() && usernameKeys.isEmpty()) {
+            return new UserBatchResponse(byId, byUsername);
+        }
+        for (UserSummary summary : userRepository.findSummariesByIdInOrUsernameIn(idKeys, usernameKeys)) {
+            UserDTO dto = summary.toDTO();
+            if (idKeys.contains(summary.id())) {
+                byId.put(summary.id(), dto);
+            }
+            if (usernameKeys.contains(summary.username())) {
+                byUsername.put(summary.username(), dto);
+            }
+        }
+        return new UserBatchResponse(byId, byUsername);
+    }
+
+    /**
+     * Returns up to {@code size} users ordered by id, starting after {@code afterId}
+     * (or from the first user when null). The size is capped at {@link #MAX_PAGE_SIZE}.
+     */
+    public List<UserDTO> findUsersPage(Long afterId, int size) {
+        return findVersionedUsersPage(afterId, size).body();
+    }
+
+    /** A page as in {@link #findUsersPage} with the entity tag of its rows. */
+    public Versioned<List<UserDTO>> findVersionedUsersPage(Long afterId, int size) {
+        Limit limit = Limit.of(effectivePageSize(size));
+        List<UserSummary> summaries = userRepository.findSummariesAfter(afterId == null ? 0L : afterId, limit);
+        List<UserDTO> users = summaries.stream()
+                .map(UserSummary::toDTO)
                 .collect(Collectors.toList());
+        return new Versioned<>(users, pageETag(summaries.stream()
+                .map(summary -> new UserVersion(summary.id(), summary.version()))
+                .toList()));
+    }
+
+    /**
+     * Current entity tag of the page, computed from the ids and versions of its rows only. Any
+     * update, insert or delete within the page's range changes it.
+     */
+    public String findUsersPageETag(Long afterId, int size) {
+        Limit limit = Limit.of(effectivePageSize(size));
+        return pageETag(userRepository.findVersionsAfter(afterId == null ? 0L : afterId, limit));
+    }
+
+    public static int effectivePageSize(int requested) {
+        return Math.min(Math.max(requested, 1), MAX_PAGE_SIZE);
+    }
+
+    static String userETag(long id, long version) {
+        return "\"" + id + "-" + version + "\"";
+    }
+
+    // If-Match uses strong comparison, so weak tags (W/"...") never match
+    static boolean matchesETag(String ifMatch, String current) {
+        for (String candidate : ifMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals("*") || tag.equals(current)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Digest of the (id, version) pairs; 128 bits keeps accidental matches out of reach
+    static String pageETag(List<UserVersion> rows) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+        for (UserVersion row : rows) {
+            digest.update((row.id() + "-" + row.version() + ";").getBytes(StandardCharsets.US_ASCII));
+        }
+        return "\"p" + HexFormat.of().formatHex(Arrays.copyOf(digest.digest(), 16)) + "\"";
+    }
+
+    /**
+     * Hands every user to the consumer in id order as rows are read from a database cursor.
+     * Rows are projections rather than entities, so memory stays flat regardless of table size.
+     */
+    @Transactional(readOnly = true)
+    public void streamAllUsers(Consumer<UserDTO> consumer) {
+        try (Stream<UserSummary> users = userRepository.streamSummaries()) {
+            users.map(UserSummary::toDTO).forEach(consumer);
+        }
     }
 
     @Transactional
     public UserDTO updateUser(Long id, UserDTO userDTO) {
+        return updateUser(id, userDTO, null).body();
+    }
+
+    /**
+     * Applies the update if {@code ifMatch} (an {@code If-Match} header value, or null for an
+     * unconditional update) matches the user's current entity tag. The row is written with a
+     * version check, so an edit committed concurrently by someone else is never silently
+     * overwritten. Returns the user with its new entity tag.
+     *
+     * @throws UserVersionConflictException if the tag is stale or a concurrent update won
+     */
+    @Transactional
+    public Versioned<UserDTO> updateUser(Long id, UserDTO userDTO, String ifMatch) {
         User user = userRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("User not found"));
+        if (ifMatch != null && !matchesETag(ifMatch, userETag(user.getId(), user.getVersion()))) {
+            throw new UserVersionConflictException("User has been modified");
+        }
+        String previousUsername = user.getUsername();
+        boolean accountChanged = !previousUsername.equals(userDTO.username());
         user.setUsername(userDTO.username());
         user.setEmail(userDTO.email());
 
         // Update roles if provided
         if (userDTO.roles() != null) {
             Set<Role> roles = userDTO.roles().stream()
-                    .map(roleName -> roleRepository.findByName(roleName)
+                    .map(roleName -> roleRegistry.findByName(roleName)
                             .orElseThrow(() -> new RuntimeException("Role not found: " + roleName)))
                     .collect(Collectors.toSet());
-            user.setRoles(roles);
+            // Edit the loaded collection in place so only added and removed user_roles rows are
+            // written; replacing the set would delete and re-insert every row of the user
+            Set<Role> current = user.getRoles();
+            if (!roles.equals(current)) {
+                accountChanged = true;
+                current.retainAll(roles);
+                current.addAll(roles);
+            }
         }
 
-        user = userRepository.save(user);
-        return mapToDTO(user);
+        // Tokens issued before a rename or role change must no longer be trusted
+        if (accountChanged) {
+            user.setAuthVersion(user.getAuthVersion() + 1);
+        }
+        try {
+            // Flushed here so the version check runs and the new version is known for the ETag
+            user = userRepository.saveAndFlush(user);
+        } catch (OptimisticLockingFailureException e) {
+            throw new UserVersionConflictException("User was modified concurrently", e);
+        } catch (DataIntegrityViolationException e) {
+            throw toConflict(e);
+        }
+        userExistenceFilter.addUser(user.getUsername(), user.getEmail());
+        eventPublisher.publishEvent(new UserAccountChangedEvent(previousUsername));
+        return new Versioned<>(mapToDTO(user), userETag(user.getId(), user.getVersion()));
     }
 
     @Transactional
     public void deleteUser(Long id) {
-        if (!userRepository.existsById(id)) {
-            throw new RuntimeException("User not found");
-        }
-        userRepository.deleteById(id);
+        User user = userRepository.findById(id)
+                .orElseThrow(() -> new RuntimeException("User not found"));
+        // The name stays in the existence filter until its next rebuild; lookups just fall through to the database
+        userRepository.delete(user);
+        eventPublisher.publishEvent(new UserAccountChangedEvent(user.getUsername()));
     }
 
 //    private UserDTO mapToDTO(User user) {
@@ -104,7 +306,7 @@ public class UserService {
 //        return dto;
 //    }
 
-    private UserDTO mapToDTO(User user) {
+    UserDTO mapToDTO(User user) {
         UserDTO dto = new UserDTO(user.getId(), user.getUsername(), user.getEmail(), user.getRoles().stream()
                 .map(Role::getName)
                 .collect(Collectors.toSet()));
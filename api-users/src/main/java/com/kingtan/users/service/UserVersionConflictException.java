@@ -0,0 +1,16 @@
+package com.kingtan.users.service;
+
+/**
+ * Thrown when an update is based on a version of the user that is no longer current: either the
+ * client's {@code If-Match} tag is stale, or another transaction committed a change first.
+ */
+public class UserVersionConflictException extends RuntimeException {
+
+    public UserVersionConflictException(String message) {
+        super(message);
+    }
+
+    public UserVersionConflictException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,7 @@
+package com.kingtan.users.service;
+
+/**
+ * A value together with the strong entity tag of the rows it was read from.
+ */
+public record Versioned<T>(T body, String etag) {
+}
@@ -9,9 +9,19 @@
       username VARCHAR(50) UNIQUE NOT NULL,
       email VARCHAR(100) UNIQUE NOT NULL,
       password VARCHAR(255) NOT NULL,
-      enabled BOOLEAN NOT NULL DEFAULT TRUE
+      enabled BOOLEAN NOT NULL DEFAULT TRUE,
+      auth_version BIGINT NOT NULL DEFAULT 0,
+      version BIGINT NOT NULL DEFAULT 0,
+      updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
   );
 
+  ALTER TABLE users ADD COLUMN IF NOT EXISTS auth_version BIGINT NOT NULL DEFAULT 0;
+  -- Optimistic-lock version (JPA @Version), also used to build ETags
+  ALTER TABLE users ADD COLUMN IF NOT EXISTS version BIGINT NOT NULL DEFAULT 0;
+  -- Last insert or update; the existence filter refresh reads recently changed rows through the index
+  ALTER TABLE users ADD COLUMN IF NOT EXISTS updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP;
+  CREATE INDEX IF NOT EXISTS idx_users_updated_at ON users (updated_at);
+
   -- Roles table
   CREATE TABLE IF NOT EXISTS roles (
       id BIGSERIAL PRIMARY KEY,
@@ -29,8 +39,51 @@
 
   CREATE TABLE IF NOT EXISTS password_reset_token (
       id BIGSERIAL PRIMARY KEY,
-      token VARCHAR(255) NOT NULL,
+      token_hash CHAR(64) NOT NULL,
       user_id BIGINT NOT NULL,
       expiry_date TIMESTAMP NOT NULL,
       FOREIGN KEY (user_id) REFERENCES users(id)
-  );
\ No newline at end of file
+  );
+
+  -- Tokens are stored as SHA-256 hex; plaintext tokens from before the change are short-lived and dropped
+  ALTER TABLE password_reset_token ADD COLUMN IF NOT EXISTS token_hash CHAR(64);
+  DELETE FROM password_reset_token WHERE token_hash IS NULL;
+  ALTER TABLE password_reset_token DROP COLUMN IF EXISTS token;
+  ALTER TABLE password_reset_token ALTER COLUMN token_hash SET NOT NULL;
+  CREATE UNIQUE INDEX IF NOT EXISTS ux_password_reset_token_hash ON password_reset_token (token_hash);
+  CREATE INDEX IF NOT EXISTS idx_password_reset_token_expiry ON password_reset_token (expiry_date);
+
+  CREATE TABLE IF NOT EXISTS two_factor_codes (
+      id BIGSERIAL PRIMARY KEY,
+      code VARCHAR(255) NOT NULL,
+      user_id BIGINT NOT NULL,
+      expires_at TIMESTAMP NOT NULL,
+      used BOOLEAN NOT NULL DEFAULT FALSE
+  );
+
+  CREATE INDEX IF NOT EXISTS idx_two_factor_codes_expires_at ON two_factor_codes (expires_at);
+  -- Used codes are few at any time; keeps the purge of used codes off a full scan
+  CREATE INDEX IF NOT EXISTS idx_two_factor_codes_used ON two_factor_codes (id) WHERE used;
+
+  -- Outgoing mail, committed with the data it refers to and delivered by MailDispatcher
+  CREATE TABLE IF NOT EXISTS mail_outbox (
+      id BIGSERIAL PRIMARY KEY,
+      recipient VARCHAR(255) NOT NULL,
+      subject VARCHAR(255) NOT NULL,
+      body VARCHAR(4000) NOT NULL,
+      status VARCHAR(16) NOT NULL DEFAULT 'PENDING',
+      attempts INT NOT NULL DEFAULT 0,
+      next_attempt_at TIMESTAMP NOT NULL,
+      created_at TIMESTAMP NOT NULL,
+      last_error VARCHAR(500)
+  );
+
+  CREATE INDEX IF NOT EXISTS idx_mail_outbox_due ON mail_outbox (status, next_attempt_at);
+
+  -- Entities take ids from these sequences in blocks of 50 (pooled optimizer), which lets Hibernate
+  -- batch inserts; the step must match allocationSize on the entity
+  ALTER SEQUENCE IF EXISTS users_id_seq INCREMENT BY 50;
+  ALTER SEQUENCE IF EXISTS roles_id_seq INCREMENT BY 50;
+  ALTER SEQUENCE IF EXISTS password_reset_token_id_seq INCREMENT BY 50;
+  ALTER SEQUENCE IF EXISTS two_factor_codes_id_seq INCREMENT BY 50;
+  ALTER SEQUENCE IF EXISTS mail_outbox_id_seq INCREMENT BY 50;
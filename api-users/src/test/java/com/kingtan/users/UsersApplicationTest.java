@@ -1,14 +1,43 @@
 package com.kingtan.users;
 
+import com.kingtan.users.dto.ImportResult;
+import com.kingtan.users.dto.SignupRequest;
+import com.kingtan.users.dto.UserDTO;
+import com.kingtan.users.model.Role;
+import com.kingtan.users.model.User;
 import com.kingtan.users.repository.PasswordResetTokenRepository;
 import com.kingtan.users.repository.RoleRepository;
 import com.kingtan.users.repository.UserRepository;
+import com.kingtan.users.security.RateLimitProperties;
+import com.kingtan.users.security.UserDetailsCache;
+import com.kingtan.users.service.RoleRegistry;
+import com.kingtan.users.service.UserFileFormat;
+import com.kingtan.users.service.UserImportService;
+import com.kingtan.users.service.UserService;
+import com.kingtan.users.service.UserVersionConflictException;
+import com.kingtan.users.service.Versioned;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.context.ApplicationContext;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.test.context.ActiveProfiles;
 
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 @SpringBootTest
@@ -27,6 +56,30 @@ class UsersApplicationTest {
     @Autowired
     private PasswordResetTokenRepository passwordResetTokenRepository;
 
+    @Autowired
+    private AuthenticationManager authenticationManager;
+
+    @Autowired
+    private UserDetailsCache userDetailsCache;
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private RoleRegistry roleRegistry;
+
+    @Autowired
+    private UserImportService userImportService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
     @Test
     void contextLoads() {
         // Verifies that the Spring application context loads successfully
@@ -53,4 +106,161 @@ class UsersApplicationTest {
         assertNotNull(passwordResetTokenRepository, "PasswordResetTokenRepository bean should be created");
         assertTrue(applicationContext.containsBean("passwordResetTokenRepository"), "PasswordResetTokenRepository bean should exist in context");
     }
-}
\ No newline at end of file
+
+    @Test
+    void rateLimitPropertiesAreBound() {
+        RateLimitProperties properties = applicationContext.getBean(RateLimitProperties.class);
+
+        assertTrue(properties.enabled());
+        assertEquals("/api/v1/auth/login", properties.endpoints().get("login").path());
+        assertEquals(Duration.ofMinutes(1), properties.endpoints().get("login").perAccount().period());
+    }
+
+    @Test
+    void authenticationManagerSharesUserDetailsCache() {
+        User user = new User();
+        user.setUsername("cachedLoginUser");
+        user.setEmail("cached-login@example.com");
+        user.setPassword(passwordEncoder.encode("secret"));
+        userRepository.save(user);
+
+        authenticationManager.authenticate(new UsernamePasswordAuthenticationToken("cachedLoginUser", "secret"));
+        long hits = userDetailsCache.stats().hitCount();
+        authenticationManager.authenticate(new UsernamePasswordAuthenticationToken("cachedLoginUser", "secret"));
+
+        assertEquals(hits + 1, userDetailsCache.stats().hitCount(), "Second login should be served from the user cache");
+        userRepository.delete(user);
+    }
+
+    @Test
+    void loginRecordsTimersAndPoolMetrics() {
+        User user = new User();
+        user.setUsername("meteredLoginUser");
+        user.setEmail("metered-login@example.com");
+        user.setPassword(passwordEncoder.encode("secret"));
+        userRepository.save(user);
+        Timer existing = meterRegistry.find("auth.password.hash").timer();
+        long hashes = existing == null ? 0 : existing.count();
+
+        authenticationManager.authenticate(new UsernamePasswordAuthenticationToken("meteredLoginUser", "secret"));
+
+        assertTrue(meterRegistry.get("auth.password.hash").timer().count() > hashes, "Password check should be timed");
+        assertNotNull(meterRegistry.find("hikaricp.connections.max").gauge(), "Connection pool should be metered");
+        assertNotNull(meterRegistry.find("hibernate.statements").functionCounter(), "Hibernate statistics should be metered");
+        assertNotNull(meterRegistry.find("auth.password.hash.queued").gauge());
+        assertNotNull(meterRegistry.find("db.repository").tags("repository", "UserRepository", "method", "findByUsername")
+                .timer(), "Repository calls should be observed");
+        userRepository.delete(user);
+    }
+
+    @Test
+    void loginUpgradesLegacyPasswordHash() {
+        User user = new User();
+        user.setUsername("legacyHashUser");
+        user.setEmail("legacy-hash@example.com");
+        user.setPassword(new BCryptPasswordEncoder(4).encode("secret"));
+        userRepository.save(user);
+
+        authenticationManager.authenticate(new UsernamePasswordAuthenticationToken("legacyHashUser", "secret"));
+
+        User stored = userRepository.findByUsername("legacyHashUser").orElseThrow();
+        assertTrue(stored.getPassword().startsWith("{bcrypt}$2a$10$"), "Hash should be upgraded on login");
+        assertTrue(passwordEncoder.matches("secret", stored.getPassword()));
+        authenticationManager.authenticate(new UsernamePasswordAuthenticationToken("legacyHashUser", "secret"));
+        userRepository.delete(stored);
+    }
+
+    @Test
+    void registerUserAssignsRoleFromRegistry() {
+        Role userRole = roleRepository.findByName("ROLE_USER").orElseGet(() -> {
+            Role role = new Role();
+            role.setName("ROLE_USER");
+            return roleRepository.save(role);
+        });
+        roleRegistry.refresh();
+
+        UserDTO registered = userService.registerUser(new SignupRequest("registryUser", "registry@example.com", "secret"));
+
+        assertEquals(Set.of("ROLE_USER"), registered.roles());
+        User stored = userRepository.findByUsername("registryUser").orElseThrow();
+        assertEquals(Set.of(userRole.getId()), stored.getRoles().stream().map(Role::getId).collect(Collectors.toSet()));
+        userRepository.delete(stored);
+    }
+
+    @Test
+    void registerUserReportsDuplicatesFromUniqueConstraints() {
+        if (roleRepository.findByName("ROLE_USER").isEmpty()) {
+            Role role = new Role();
+            role.setName("ROLE_USER");
+            roleRepository.save(role);
+        }
+        roleRegistry.refresh();
+        userService.registerUser(new SignupRequest("duplicateUser", "duplicate@example.com", "secret"));
+
+        RuntimeException sameUsername = assertThrows(RuntimeException.class, () ->
+                userService.registerUser(new SignupRequest("duplicateUser", "other@example.com", "secret")));
+        RuntimeException sameEmail = assertThrows(RuntimeException.class, () ->
+                userService.registerUser(new SignupRequest("otherUser", "duplicate@example.com", "secret")));
+
+        assertEquals("Username is already taken", sameUsername.getMessage());
+        assertEquals("Email is already in use", sameEmail.getMessage());
+        assertFalse(userRepository.findByUsername("otherUser").isPresent());
+        userRepository.delete(userRepository.findByUsername("duplicateUser").orElseThrow());
+    }
+
+    @Test
+    void updateUserWritesRoleDeltaAndChecksIfMatch() {
+        for (String name : List.of("ROLE_USER", "ROLE_ADMIN")) {
+            if (roleRepository.findByName(name).isEmpty()) {
+                Role role = new Role();
+                role.setName(name);
+                roleRepository.save(role);
+            }
+        }
+        roleRegistry.refresh();
+        UserDTO registered = userService.registerUser(new SignupRequest("roleDiffUser", "role-diff@example.com", "secret"));
+        String etag = userService.findUserETag("roleDiffUser").orElseThrow();
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        Versioned<UserDTO> updated = userService.updateUser(registered.id(), new UserDTO(registered.id(),
+                "roleDiffUser", "role-diff@example.com", Set.of("ROLE_USER", "ROLE_ADMIN")), etag);
+
+        assertEquals(Set.of("ROLE_USER", "ROLE_ADMIN"), updated.body().roles());
+        assertEquals(0, statistics.getCollectionRecreateCount(), "Existing user_roles rows should be kept");
+        assertEquals(1, statistics.getCollectionUpdateCount());
+        assertNotEquals(etag, updated.etag());
+        assertEquals(updated.etag(), userService.findUserETag("roleDiffUser").orElseThrow());
+        assertThrows(UserVersionConflictException.class, () -> userService.updateUser(registered.id(),
+                new UserDTO(registered.id(), "roleDiffUser", "stale@example.com", Set.of("ROLE_USER")), etag));
+        assertEquals("role-diff@example.com", userService.findByUsername("roleDiffUser").email());
+        userRepository.deleteById(registered.id());
+    }
+
+    @Test
+    void importUsersWritesBatchesAndReportsConflicts() throws Exception {
+        if (roleRepository.findByName("ROLE_USER").isEmpty()) {
+            Role role = new Role();
+            role.setName("ROLE_USER");
+            roleRepository.save(role);
+        }
+        roleRegistry.refresh();
+        String csv = """
+                username,email,password
+                importA,import-a@example.com,secret
+                importB,import-b@example.com,secret
+                importA,import-c@example.com,secret
+                """;
+
+        ImportResult result = userImportService.importUsers(
+                new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), UserFileFormat.CSV);
+
+        assertEquals(2, result.imported());
+        assertEquals(List.of(new ImportResult.RowError(4, "Username is already taken")), result.errors());
+        User imported = userRepository.findByUsername("importB").orElseThrow();
+        assertTrue(passwordEncoder.matches("secret", imported.getPassword()));
+        assertEquals(Set.of("ROLE_USER"), imported.getRoles().stream().map(Role::getName).collect(Collectors.toSet()));
+        userRepository.delete(imported);
+        userRepository.delete(userRepository.findByUsername("importA").orElseThrow());
+    }
+}
@@ -0,0 +1,87 @@
+package com.kingtan.users.config;
+
+import com.kingtan.users.model.MailOutbox;
+import com.kingtan.users.repository.MailOutboxRepository;
+import com.kingtan.users.security.LoginRateLimitFilter;
+import com.kingtan.users.security.PasswordHashingExecutor;
+import com.kingtan.users.security.UserDetailsCache;
+import com.kingtan.users.service.ExpiredTokenPurger;
+import com.kingtan.users.service.MailDispatcher;
+import com.kingtan.users.service.UserExistenceFilter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class MetricsConfigTest {
+
+    private final MetricsConfig metricsConfig = new MetricsConfig();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final PasswordHashingExecutor executor = new PasswordHashingExecutor(2, 10, Duration.ofSeconds(1));
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    void passwordHashingMetrics_shouldReadPoolState() {
+        metricsConfig.passwordHashingMetrics(executor).bindTo(registry);
+        executor.execute(() -> "hash");
+
+        assertEquals(2, registry.get("auth.password.hash.pool.size").gauge().value());
+        assertEquals(0, registry.get("auth.password.hash.rejected").functionCounter().count());
+        assertEquals(1, registry.get("auth.password.hash.wait").functionTimer().count());
+    }
+
+    @Test
+    void authMetrics_shouldExposeCacheAndFilterCounters() {
+        UserDetailsCache cache = new UserDetailsCache(10, Duration.ofMinutes(1));
+        UserExistenceFilter existenceFilter = mock(UserExistenceFilter.class);
+        LoginRateLimitFilter rateLimitFilter = mock(LoginRateLimitFilter.class);
+        when(existenceFilter.getShortCircuitedLookups()).thenReturn(7L);
+        when(rateLimitFilter.getRejectedCount()).thenReturn(3L);
+        metricsConfig.authMetrics(cache, existenceFilter, rateLimitFilter).bindTo(registry);
+
+        cache.getUserFromCache("missing");
+
+        assertEquals(1, registry.get("cache.gets").tags("cache", "userDetails", "result", "miss").functionCounter().count());
+        assertEquals(0, registry.get("cache.gets").tags("result", "hit").functionCounter().count());
+        assertEquals(7, registry.get("auth.user_filter.short_circuited").functionCounter().count());
+        assertEquals(3, registry.get("auth.rate_limit.rejected").functionCounter().count());
+    }
+
+    @Test
+    void mailMetrics_shouldCountOutboxByStatusAndSkipMissingDispatcher() {
+        MailOutboxRepository outboxRepository = mock(MailOutboxRepository.class);
+        when(outboxRepository.countByStatus(MailOutbox.Status.PENDING)).thenReturn(4L);
+        metricsConfig.mailMetrics(outboxRepository, provider(MailDispatcher.class, null)).bindTo(registry);
+
+        assertEquals(4, registry.get("mail.outbox.messages").tag("status", "pending").gauge().value());
+        assertEquals(0, registry.get("mail.outbox.messages").tag("status", "failed").gauge().value());
+        assertNull(registry.find("mail.sent").functionCounter(), "Dispatcher is disabled");
+    }
+
+    @Test
+    void purgeMetrics_shouldTagRowsByTable() {
+        ExpiredTokenPurger purger = mock(ExpiredTokenPurger.class);
+        when(purger.getTwoFactorCodesPurged()).thenReturn(12L);
+        metricsConfig.purgeMetrics(provider(ExpiredTokenPurger.class, purger)).bindTo(registry);
+
+        assertEquals(12, registry.get("purge.rows").tag("table", "two_factor_codes").functionCounter().count());
+    }
+
+    private static <T> ObjectProvider<T> provider(Class<T> type, T bean) {
+        StaticListableBeanFactory beanFactory = new StaticListableBeanFactory();
+        if (bean != null) {
+            beanFactory.addBean(type.getSimpleName(), bean);
+        }
+        return beanFactory.getBeanProvider(type);
+    }
+}
@@ -0,0 +1,61 @@
+package com.kingtan.users.config;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.task.SimpleAsyncTaskSchedulerBuilder;
+import org.springframework.boot.task.ThreadPoolTaskSchedulerBuilder;
+import org.springframework.scheduling.concurrent.SimpleAsyncTaskScheduler;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SchedulingConfigTest {
+
+    private final SchedulingConfig schedulingConfig = new SchedulingConfig();
+
+    private SimpleAsyncTaskScheduler taskScheduler;
+    private ThreadPoolTaskScheduler platformTaskScheduler;
+    private ThreadPoolTaskScheduler mailTaskScheduler;
+
+    @AfterEach
+    void tearDown() {
+        if (taskScheduler != null) {
+            taskScheduler.close();
+        }
+        if (platformTaskScheduler != null) {
+            platformTaskScheduler.shutdown();
+        }
+        if (mailTaskScheduler != null) {
+            mailTaskScheduler.shutdown();
+        }
+    }
+
+    @Test
+    void taskScheduler_shouldRunJobsOnVirtualThreadsWhenEnabled() throws Exception {
+        taskScheduler = schedulingConfig.taskSchedulerVirtualThreads(new SimpleAsyncTaskSchedulerBuilder().virtualThreads(true));
+        taskScheduler.start();
+
+        assertTrue(taskScheduler.submit(() -> Thread.currentThread().isVirtual()).get());
+    }
+
+    @Test
+    void taskScheduler_shouldReusePooledPlatformThreadsWhenDisabled() throws Exception {
+        platformTaskScheduler = schedulingConfig.taskScheduler(new ThreadPoolTaskSchedulerBuilder());
+        platformTaskScheduler.initialize();
+
+        Thread first = platformTaskScheduler.submit(Thread::currentThread).get();
+        Thread second = platformTaskScheduler.submit(Thread::currentThread).get();
+        assertFalse(first.isVirtual());
+        assertSame(first, second, "Runs should share the pool instead of starting a thread each");
+    }
+
+    @Test
+    void mailTaskScheduler_shouldUsePlatformThread() throws Exception {
+        mailTaskScheduler = schedulingConfig.mailTaskScheduler(new ThreadPoolTaskSchedulerBuilder());
+        mailTaskScheduler.initialize();
+
+        Thread thread = mailTaskScheduler.submit(Thread::currentThread).get();
+        assertFalse(thread.isVirtual(), "SMTP I/O must not pin a virtual thread carrier");
+        assertTrue(thread.getName().startsWith("mail-"));
+    }
+}
@@ -0,0 +1,69 @@
+package com.kingtan.users.config;
+
+import io.micrometer.tracing.Span;
+import io.micrometer.tracing.TraceContext;
+import io.micrometer.tracing.Tracer;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class TraceIdHeaderFilterTest {
+
+    private final Tracer tracer = mock(Tracer.class);
+    private final TraceIdHeaderFilter filter = new TraceIdHeaderFilter(tracer);
+
+    @Test
+    void doFilter_shouldReturnTraceIdOfCurrentSpan() throws Exception {
+        Span span = mock(Span.class);
+        TraceContext context = mock(TraceContext.class);
+        when(tracer.currentSpan()).thenReturn(span);
+        when(span.context()).thenReturn(context);
+        when(context.traceId()).thenReturn("4bf92f3577b34da6a3ce929d0e0e4736");
+        MockFilterChain chain = new MockFilterChain();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(new MockHttpServletRequest("GET", "/api/v1/users/alice"), response, chain);
+
+        assertEquals("4bf92f3577b34da6a3ce929d0e0e4736", response.getHeader(TraceIdHeaderFilter.TRACE_ID_HEADER));
+        assertNotNull(chain.getRequest(), "Request should continue down the chain");
+    }
+
+    @Test
+    void doFilter_shouldOmitHeaderWithoutSpan() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(new MockHttpServletRequest("GET", "/api/v1/users/alice"), response, new MockFilterChain());
+
+        assertNull(response.getHeader(TraceIdHeaderFilter.TRACE_ID_HEADER));
+    }
+
+    @Test
+    void doFilter_shouldReturnTraceIdOfUnsampledSpan() throws Exception {
+        Span span = mock(Span.class);
+        TraceContext context = mock(TraceContext.class);
+        when(tracer.currentSpan()).thenReturn(span);
+        when(span.isNoop()).thenReturn(true);
+        when(span.context()).thenReturn(context);
+        when(context.sampled()).thenReturn(false);
+        when(context.traceId()).thenReturn("4bf92f3577b34da6a3ce929d0e0e4736");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(new MockHttpServletRequest("GET", "/api/v1/users/alice"), response, new MockFilterChain());
+
+        assertEquals("4bf92f3577b34da6a3ce929d0e0e4736", response.getHeader(TraceIdHeaderFilter.TRACE_ID_HEADER));
+    }
+
+    @Test
+    void doFilter_shouldOmitHeaderWithoutValidTraceId() throws Exception {
+        when(tracer.currentSpan()).thenReturn(Span.NOOP);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(new MockHttpServletRequest("GET", "/api/v1/users/alice"), response, new MockFilterChain());
+
+        assertNull(response.getHeader(TraceIdHeaderFilter.TRACE_ID_HEADER));
+    }
+}
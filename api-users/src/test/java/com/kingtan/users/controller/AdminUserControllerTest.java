@@ -0,0 +1,87 @@
+package com.kingtan.users.controller;
+
+import com.kingtan.users.service.UserExportService;
+import com.kingtan.users.service.UserFileFormat;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@ExtendWith(MockitoExtension.class)
+class AdminUserControllerTest {
+    private String version = "v1";
+
+    @Mock
+    private UserExportService userExportService;
+
+    @InjectMocks
+    private AdminUserController adminUserController;
+
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        mockMvc = MockMvcBuilders.standaloneSetup(adminUserController).build();
+    }
+
+    @Test
+    void exportUsers_StreamsCsvAsAttachment() throws Exception {
+        doAnswer(invocation -> {
+            invocation.<java.io.OutputStream>getArgument(0).write("id,username\n".getBytes());
+            return 1L;
+        }).when(userExportService).export(any(), eq(UserFileFormat.CSV));
+
+        MvcResult result = mockMvc.perform(get("/api/%s/admin/users/export".formatted(version)).param("format", "csv"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("text/csv"))
+                .andExpect(header().string(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"users.csv\""))
+                .andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING))
+                .andExpect(content().string("id,username\n"));
+    }
+
+    @Test
+    void exportUsers_GzipsWhenAccepted() throws Exception {
+        doAnswer(invocation -> {
+            invocation.<java.io.OutputStream>getArgument(0).write("{\"id\":1}\n".getBytes());
+            return 1L;
+        }).when(userExportService).export(any(), eq(UserFileFormat.NDJSON));
+
+        MvcResult result = mockMvc.perform(get("/api/%s/admin/users/export".formatted(version))
+                        .header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        byte[] body = mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        try (java.util.zip.GZIPInputStream unzipped = new java.util.zip.GZIPInputStream(new java.io.ByteArrayInputStream(body))) {
+            assertEquals("{\"id\":1}\n", new String(unzipped.readAllBytes()));
+        }
+    }
+
+    @Test
+    void exportUsers_RejectsUnknownFormat() throws Exception {
+        mockMvc.perform(get("/api/%s/admin/users/export".formatted(version)).param("format", "xml"))
+                .andExpect(status().isBadRequest());
+
+        verifyNoInteractions(userExportService);
+    }
+}
@@ -1,7 +1,9 @@
 package com.kingtan.users.controller;
 
 import com.kingtan.users.dto.LoginRequest;
+import com.kingtan.users.security.HashingCapacityExceededException;
 import com.kingtan.users.security.JwtUtil;
+import com.kingtan.users.security.UserPrincipal;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -16,6 +18,9 @@ import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
@@ -48,9 +53,10 @@ class AuthControllerTest {
 
     @Test
     void testLogin_Success() throws Exception {
+        UserPrincipal principal = new UserPrincipal(1L, "testuser", "", true, 0, List.of());
         when(authenticationManager.authenticate(any(UsernamePasswordAuthenticationToken.class)))
-                .thenReturn(new UsernamePasswordAuthenticationToken("testuser", null));
-        when(jwtUtil.generateToken("testuser")).thenReturn("jwt-token");
+                .thenReturn(new UsernamePasswordAuthenticationToken(principal, null));
+        when(jwtUtil.generateToken(principal)).thenReturn("jwt-token");
 
         mockMvc.perform(post("/api/%s/auth/login".formatted(version))
                         .contentType(MediaType.APPLICATION_JSON)
@@ -59,6 +65,26 @@ class AuthControllerTest {
                 .andExpect(content().string("jwt-token"));
 
         verify(authenticationManager, times(1)).authenticate(any(UsernamePasswordAuthenticationToken.class));
-        verify(jwtUtil, times(1)).generateToken("testuser");
+        verify(jwtUtil, times(1)).generateToken(principal);
+    }
+
+    @Test
+    void testLogin_HashingQueueFull_ReturnsServiceUnavailable() throws Exception {
+        when(authenticationManager.authenticate(any(UsernamePasswordAuthenticationToken.class)))
+                .thenThrow(new HashingCapacityExceededException(2));
+
+        mockMvc.perform(post("/api/%s/auth/login".formatted(version))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(loginRequest)))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string("Retry-After", "2"));
+
+        verifyNoInteractions(jwtUtil);
+    }
+
+    @Test
+    void testLoginRequest_ToStringRedactsPassword() {
+        assertFalse(loginRequest.toString().contains("password123"));
+        assertTrue(loginRequest.toString().contains("testuser"));
     }
 }
@@ -2,24 +2,40 @@ package com.kingtan.users.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.kingtan.users.dto.SignupRequest;
+import com.kingtan.users.dto.UserBatchResponse;
 import com.kingtan.users.dto.UserDTO;
+import com.kingtan.users.dto.ImportResult;
+import com.kingtan.users.service.UserFileFormat;
+import com.kingtan.users.service.UserImportService;
 import com.kingtan.users.service.UserService;
+import com.kingtan.users.service.UserVersionConflictException;
+import com.kingtan.users.service.Versioned;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.validation.beanvalidation.LocalValidatorFactoryBean;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -31,17 +47,21 @@ class UserControllerTest {
     @Mock
     private UserService userService;
 
+    @Mock
+    private UserImportService userImportService;
+
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper();
+
     @InjectMocks
     private UserController userController;
 
     private MockMvc mockMvc;
-    private ObjectMapper objectMapper;
     private UserDTO userDTO;
     private SignupRequest signupRequest;
 
     @BeforeEach
     void setUp() {
-        objectMapper = new ObjectMapper();
 //        mockMvc = MockMvcBuilders.standaloneSetup(userController).build();
         // Configure Validator for @Valid annotations
         LocalValidatorFactoryBean validator = new LocalValidatorFactoryBean();
@@ -82,55 +102,184 @@ class UserControllerTest {
 
     @Test
     void getUser_Success() throws Exception {
-        when(userService.findByUsername("testuser")).thenReturn(userDTO);
+        when(userService.findVersionedByUsername("testuser")).thenReturn(new Versioned<>(userDTO, "\"1-3\""));
 
         mockMvc.perform(get("/api/%s/users/testuser".formatted(version)))
                 .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"1-3\""))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "no-cache, private"))
                 .andExpect(jsonPath("$.username").value("testuser"))
                 .andExpect(jsonPath("$.email").value("test@example.com"))
                 .andExpect(jsonPath("$.roles[0]").value("ROLE_USER"));
 
-        verify(userService).findByUsername("testuser");
+        verify(userService).findVersionedByUsername("testuser");
+        verify(userService, never()).findUserETag(any());
+    }
+
+    @Test
+    void getUser_MatchingETag_ReturnsNotModifiedWithoutLoadingUser() throws Exception {
+        when(userService.findUserETag("testuser")).thenReturn(Optional.of("\"1-3\""));
+
+        mockMvc.perform(get("/api/%s/users/testuser".formatted(version))
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"1-3\""))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"1-3\""))
+                .andExpect(content().string(""));
+
+        verify(userService, never()).findVersionedByUsername(any());
+    }
+
+    @Test
+    void getUser_StaleETag_ReturnsCurrentUser() throws Exception {
+        when(userService.findUserETag("testuser")).thenReturn(Optional.of("\"1-4\""));
+        when(userService.findVersionedByUsername("testuser")).thenReturn(new Versioned<>(userDTO, "\"1-4\""));
+
+        mockMvc.perform(get("/api/%s/users/testuser".formatted(version))
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"1-3\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"1-4\""))
+                .andExpect(jsonPath("$.username").value("testuser"));
+    }
+
+    @Test
+    void findUsers_ReturnsMapsKeyedByRequest() throws Exception {
+        when(userService.findUsers(Set.of(1L), Set.of("testuser")))
+                .thenReturn(new UserBatchResponse(Map.of(1L, userDTO), Map.of("testuser", userDTO)));
+
+        mockMvc.perform(post("/api/%s/users/batch".formatted(version))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"ids\":[1],\"usernames\":[\"testuser\"]}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.ids['1'].username").value("testuser"))
+                .andExpect(jsonPath("$.usernames.testuser.email").value("test@example.com"));
+    }
+
+    @Test
+    void findUsers_TooManyKeys_ReturnsBadRequest() throws Exception {
+        String ids = LongStream.rangeClosed(1, UserService.MAX_BATCH_SIZE + 1)
+                .mapToObj(Long::toString)
+                .collect(Collectors.joining(","));
+
+        mockMvc.perform(post("/api/%s/users/batch".formatted(version))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"ids\":[" + ids + "]}"))
+                .andExpect(status().isBadRequest());
+
+        verify(userService, never()).findUsers(any(), any());
     }
 
     @Test
     void getAllUsers_Success() throws Exception {
-        when(userService.findAllUsers()).thenReturn(List.of(userDTO));
+        when(userService.findVersionedUsersPage(null, UserService.DEFAULT_PAGE_SIZE))
+                .thenReturn(new Versioned<>(List.of(userDTO), "\"p1\""));
 
         mockMvc.perform(get("/api/%s/users".formatted(version)))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$[0].username").value("testuser"))
                 .andExpect(jsonPath("$[0].email").value("test@example.com"))
-                .andExpect(jsonPath("$[0].roles[0]").value("ROLE_USER"));
+                .andExpect(jsonPath("$[0].roles[0]").value("ROLE_USER"))
+                .andExpect(header().doesNotExist(HttpHeaders.LINK));
 
-        verify(userService).findAllUsers();
+        verify(userService).findVersionedUsersPage(null, UserService.DEFAULT_PAGE_SIZE);
     }
 
     @Test
     void getAllUsers_EmptyList() throws Exception {
-        when(userService.findAllUsers()).thenReturn(Collections.emptyList());
+        when(userService.findVersionedUsersPage(null, UserService.DEFAULT_PAGE_SIZE))
+                .thenReturn(new Versioned<>(Collections.emptyList(), "\"p0\""));
 
         mockMvc.perform(get("/api/%s/users".formatted(version)))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$").isArray())
                 .andExpect(jsonPath("$").isEmpty());
 
-        verify(userService).findAllUsers();
+        verify(userService).findVersionedUsersPage(null, UserService.DEFAULT_PAGE_SIZE);
+    }
+
+    @Test
+    void getAllUsers_FullPage_LinksToNextPage() throws Exception {
+        when(userService.findVersionedUsersPage(5L, 1)).thenReturn(new Versioned<>(List.of(userDTO), "\"p1\""));
+
+        mockMvc.perform(get("/api/%s/users?after=5&size=1".formatted(version)))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"p1\""))
+                .andExpect(header().string(HttpHeaders.LINK, "<http://localhost/api/v1/users?size=1&after=1>; rel=\"next\""));
+    }
+
+    @Test
+    void getAllUsers_MatchingETag_ReturnsNotModifiedWithoutLoadingPage() throws Exception {
+        when(userService.findUsersPageETag(5L, 1)).thenReturn("\"p1\"");
+
+        mockMvc.perform(get("/api/%s/users?after=5&size=1".formatted(version))
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"p1\""))
+                .andExpect(status().isNotModified());
+
+        verify(userService, never()).findVersionedUsersPage(any(), anyInt());
+    }
+
+    @Test
+    void streamAllUsers_WritesNewlineDelimitedJson() throws Exception {
+        UserDTO second = new UserDTO(2L, "other", "other@example.com", Set.of("ROLE_ADMIN"));
+        doAnswer(invocation -> {
+            Consumer<UserDTO> consumer = invocation.getArgument(0);
+            consumer.accept(userDTO);
+            consumer.accept(second);
+            return null;
+        }).when(userService).streamAllUsers(any());
+
+        MvcResult result = mockMvc.perform(get("/api/%s/users".formatted(version))
+                        .accept("application/x-ndjson"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        String body = mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/x-ndjson"))
+                .andReturn().getResponse().getContentAsString();
+        String[] lines = body.split("\n");
+        assertEquals(2, lines.length);
+        assertEquals("testuser", objectMapper.readTree(lines[0]).get("username").asText());
+        assertEquals("other", objectMapper.readTree(lines[1]).get("username").asText());
+        verify(userService, never()).findVersionedUsersPage(any(), anyInt());
     }
 
     @Test
     void updateUser_Success() throws Exception {
-        when(userService.updateUser(eq(1L), any(UserDTO.class))).thenReturn(userDTO);
+        when(userService.updateUser(eq(1L), any(UserDTO.class), isNull())).thenReturn(new Versioned<>(userDTO, "\"1-4\""));
 
         mockMvc.perform(put("/api/%s/users/1".formatted(version))
                         .contentType(MediaType.APPLICATION_JSON)
                         .content("{\"username\":\"testuser\",\"email\":\"test@example.com\",\"roles\":[\"ROLE_USER\"]}"))
                 .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"1-4\""))
                 .andExpect(jsonPath("$.username").value("testuser"))
                 .andExpect(jsonPath("$.email").value("test@example.com"))
                 .andExpect(jsonPath("$.roles[0]").value("ROLE_USER"));
 
-        verify(userService).updateUser(eq(1L), any(UserDTO.class));
+        verify(userService).updateUser(eq(1L), any(UserDTO.class), isNull());
+    }
+
+    @Test
+    void updateUser_StaleIfMatch_ReturnsPreconditionFailed() throws Exception {
+        when(userService.updateUser(eq(1L), any(UserDTO.class), eq("\"1-3\"")))
+                .thenThrow(new UserVersionConflictException("User has been modified"));
+
+        mockMvc.perform(put("/api/%s/users/1".formatted(version))
+                        .header(HttpHeaders.IF_MATCH, "\"1-3\"")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"username\":\"testuser\",\"email\":\"test@example.com\",\"roles\":[\"ROLE_USER\"]}"))
+                .andExpect(status().isPreconditionFailed());
+    }
+
+    @Test
+    void updateUser_LostRace_ReturnsConflict() throws Exception {
+        when(userService.updateUser(eq(1L), any(UserDTO.class), isNull()))
+                .thenThrow(new UserVersionConflictException("User was modified concurrently"));
+
+        mockMvc.perform(put("/api/%s/users/1".formatted(version))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"username\":\"testuser\",\"email\":\"test@example.com\",\"roles\":[\"ROLE_USER\"]}"))
+                .andExpect(status().isConflict());
     }
 
 //    @Test
@@ -153,7 +302,7 @@ class UserControllerTest {
                         .accept(MediaType.APPLICATION_JSON))
                 .andExpect(status().isBadRequest());
 
-        verify(userService, never()).updateUser(anyLong(), any(UserDTO.class));
+        verify(userService, never()).updateUser(anyLong(), any(UserDTO.class), any());
     }
 
     @Test
@@ -165,4 +314,44 @@ class UserControllerTest {
 
         verify(userService).deleteUser(1L);
     }
-}
\ No newline at end of file
+
+    @Test
+    void importUsers_DispatchesOnContentType() throws Exception {
+        ImportResult result = new ImportResult(1, 1, List.of(new ImportResult.RowError(3, "Email should be valid")), false);
+        when(userImportService.importUsers(any(), any(UserFileFormat.class))).thenReturn(result);
+
+        mockMvc.perform(post("/api/%s/users/import".formatted(version))
+                        .contentType("text/csv")
+                        .content("username,email,password\nalice,alice@example.com,secret\n"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.imported").value(1))
+                .andExpect(jsonPath("$.errors[0].line").value(3));
+        mockMvc.perform(post("/api/%s/users/import".formatted(version))
+                        .contentType("application/x-ndjson")
+                        .content("{}\n"))
+                .andExpect(status().isOk());
+
+        verify(userImportService).importUsers(any(), eq(UserFileFormat.CSV));
+        verify(userImportService).importUsers(any(), eq(UserFileFormat.NDJSON));
+    }
+
+    @Test
+    void importUsers_RejectsUnsupportedContentType() throws Exception {
+        mockMvc.perform(post("/api/%s/users/import".formatted(version))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[]"))
+                .andExpect(status().isUnsupportedMediaType());
+
+        verifyNoInteractions(userImportService);
+    }
+
+    @Test
+    void getUserByUsername_TreatsExportAsAUsername() throws Exception {
+        UserDTO export = new UserDTO(2L, "export", "export@example.com", Set.of("ROLE_USER"));
+        when(userService.findVersionedByUsername("export")).thenReturn(new Versioned<>(export, "\"1\""));
+
+        mockMvc.perform(get("/api/%s/users/export".formatted(version)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.username").value("export"));
+    }
+}
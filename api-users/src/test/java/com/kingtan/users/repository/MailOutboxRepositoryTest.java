@@ -0,0 +1,84 @@
+package com.kingtan.users.repository;
+
+import com.kingtan.users.model.MailOutbox;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@ActiveProfiles("test")
+class MailOutboxRepositoryTest {
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private MailOutboxRepository mailOutboxRepository;
+
+    private MailOutbox persistMail(String recipient, MailOutbox.Status status, LocalDateTime nextAttemptAt) {
+        MailOutbox mail = new MailOutbox();
+        mail.setRecipient(recipient);
+        mail.setSubject("subject");
+        mail.setBody("body");
+        mail.setStatus(status);
+        mail.setCreatedAt(LocalDateTime.now());
+        mail.setNextAttemptAt(nextAttemptAt);
+        return entityManager.persistAndFlush(mail);
+    }
+
+    @Test
+    void claimDue_shouldReturnOnlyPendingMailThatIsDueInIdOrder() {
+        LocalDateTime now = LocalDateTime.now();
+        MailOutbox first = persistMail("first@example.com", MailOutbox.Status.PENDING, now.minusMinutes(5));
+        MailOutbox second = persistMail("second@example.com", MailOutbox.Status.PENDING, now.minusMinutes(10));
+        persistMail("later@example.com", MailOutbox.Status.PENDING, now.plusMinutes(5));
+        persistMail("failed@example.com", MailOutbox.Status.FAILED, now.minusMinutes(5));
+
+        List<MailOutbox> due = mailOutboxRepository.claimDue(now, 10);
+
+        assertEquals(List.of(first.getId(), second.getId()), due.stream().map(MailOutbox::getId).toList());
+    }
+
+    @Test
+    void claimDue_shouldHonourTheBatchLimit() {
+        LocalDateTime now = LocalDateTime.now();
+        for (int i = 0; i < 5; i++) {
+            persistMail("user" + i + "@example.com", MailOutbox.Status.PENDING, now.minusMinutes(1));
+        }
+
+        List<MailOutbox> due = mailOutboxRepository.claimDue(now, 3);
+
+        assertEquals(3, due.size(), "Only one batch should be claimed");
+    }
+
+    @Test
+    void countByStatus_shouldCountMailPerStatus() {
+        LocalDateTime now = LocalDateTime.now();
+        persistMail("a@example.com", MailOutbox.Status.PENDING, now);
+        persistMail("b@example.com", MailOutbox.Status.FAILED, now);
+
+        assertEquals(1, mailOutboxRepository.countByStatus(MailOutbox.Status.PENDING));
+        assertEquals(1, mailOutboxRepository.countByStatus(MailOutbox.Status.FAILED));
+    }
+
+    @Test
+    void deleteFailedChunk_shouldDeleteOnlyFailedMailGivenUpBeforeCutoff() {
+        LocalDateTime now = LocalDateTime.now();
+        persistMail("old-failed@example.com", MailOutbox.Status.FAILED, now.minusDays(8));
+        MailOutbox recentFailure = persistMail("new-failed@example.com", MailOutbox.Status.FAILED, now.minusDays(1));
+        MailOutbox stalePending = persistMail("pending@example.com", MailOutbox.Status.PENDING, now.minusDays(8));
+
+        int deleted = mailOutboxRepository.deleteFailedChunk(now.minusDays(7), 10);
+
+        assertEquals(1, deleted);
+        assertEquals(List.of(recentFailure.getId(), stalePending.getId()),
+                mailOutboxRepository.findAll().stream().map(MailOutbox::getId).sorted().toList());
+    }
+}
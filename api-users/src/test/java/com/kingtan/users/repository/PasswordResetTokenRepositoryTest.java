@@ -41,25 +41,25 @@ class PasswordResetTokenRepositoryTest {
 
         // Create and persist a PasswordResetToken
         testToken = new PasswordResetToken();
-        testToken.setToken("reset-token-123");
+        testToken.setTokenHash("reset-token-123");
         testToken.setUser(testUser);
         testToken.setExpiryDate(LocalDateTime.now().plusHours(1)); // Expires in 1 hour
         entityManager.persistAndFlush(testToken);
     }
 
     @Test
-    void findByToken_shouldReturnTokenWhenTokenExists() {
-        Optional<PasswordResetToken> foundToken = passwordResetTokenRepository.findByToken("reset-token-123");
+    void findByTokenHash_shouldReturnTokenWhenTokenExists() {
+        Optional<PasswordResetToken> foundToken = passwordResetTokenRepository.findByTokenHash("reset-token-123");
 
-        assertTrue(foundToken.isPresent(), "Token should be found by token string");
-        assertEquals("reset-token-123", foundToken.get().getToken(), "Token string should match");
+        assertTrue(foundToken.isPresent(), "Token should be found by its hash");
+        assertEquals("reset-token-123", foundToken.get().getTokenHash(), "Token hash should match");
         assertEquals(testUser.getId(), foundToken.get().getUser().getId(), "User ID should match");
         assertNotNull(foundToken.get().getExpiryDate(), "Expiry date should not be null");
     }
 
     @Test
-    void findByToken_shouldReturnEmptyWhenTokenDoesNotExist() {
-        Optional<PasswordResetToken> foundToken = passwordResetTokenRepository.findByToken("non-existent-token");
+    void findByTokenHash_shouldReturnEmptyWhenTokenDoesNotExist() {
+        Optional<PasswordResetToken> foundToken = passwordResetTokenRepository.findByTokenHash("non-existent-token");
 
         assertFalse(foundToken.isPresent(), "No token should be found for non-existent token");
     }
@@ -76,7 +76,7 @@ class PasswordResetTokenRepositoryTest {
 
         // Create an expired token for the second User
         PasswordResetToken expiredToken = new PasswordResetToken();
-        expiredToken.setToken("expired-token-456");
+        expiredToken.setTokenHash("expired-token-456");
         expiredToken.setUser(secondUser);
         expiredToken.setExpiryDate(LocalDateTime.now().minusHours(1)); // Expired 1 hour ago
         entityManager.persist(expiredToken);
@@ -91,7 +91,7 @@ class PasswordResetTokenRepositoryTest {
 
         // Create a non-expired token for the third User
         PasswordResetToken nonExpiredToken = new PasswordResetToken();
-        nonExpiredToken.setToken("non-expired-token-789");
+        nonExpiredToken.setTokenHash("non-expired-token-789");
         nonExpiredToken.setUser(thirdUser);
         nonExpiredToken.setExpiryDate(LocalDateTime.now().plusHours(2)); // Expires in 2 hours
         entityManager.persistAndFlush(nonExpiredToken);
@@ -99,7 +99,7 @@ class PasswordResetTokenRepositoryTest {
         List<PasswordResetToken> expiredTokens = passwordResetTokenRepository.findByExpiryDateBefore(LocalDateTime.now());
 
         assertEquals(1, expiredTokens.size(), "Should find one expired token");
-        assertEquals("expired-token-456", expiredTokens.get(0).getToken(), "Expired token string should match");
+        assertEquals("expired-token-456", expiredTokens.get(0).getTokenHash(), "Expired token hash should match");
     }
 
     @Test
@@ -113,6 +113,29 @@ class PasswordResetTokenRepositoryTest {
         assertTrue(expiredTokens.isEmpty(), "No tokens should be found when none are expired");
     }
 
+    @Test
+    void deleteExpiredChunk_shouldDeleteOnlyExpiredTokensUpToTheLimit() {
+        for (int i = 0; i < 3; i++) {
+            User user = new User();
+            user.setUsername("expiredUser" + i);
+            user.setEmail("expired" + i + "@example.com");
+            user.setPassword("password");
+            entityManager.persist(user);
+
+            PasswordResetToken expiredToken = new PasswordResetToken();
+            expiredToken.setTokenHash("expired-token-" + i);
+            expiredToken.setUser(user);
+            expiredToken.setExpiryDate(LocalDateTime.now().minusHours(1));
+            entityManager.persist(expiredToken);
+        }
+
+        assertEquals(2, passwordResetTokenRepository.deleteExpiredChunk(LocalDateTime.now(), 2));
+        assertEquals(1, passwordResetTokenRepository.deleteExpiredChunk(LocalDateTime.now(), 2));
+        assertEquals(0, passwordResetTokenRepository.deleteExpiredChunk(LocalDateTime.now(), 2));
+        assertTrue(passwordResetTokenRepository.findByTokenHash("reset-token-123").isPresent(),
+                "Unexpired token should be kept");
+    }
+
     @Test
     void save_shouldPersistNewToken() {
         // Delete the existing token to allow a new token for testUser
@@ -120,7 +143,7 @@ class PasswordResetTokenRepositoryTest {
         entityManager.flush();
 
         PasswordResetToken newToken = new PasswordResetToken();
-        newToken.setToken("new-token-999");
+        newToken.setTokenHash("new-token-999");
         newToken.setUser(testUser);
         newToken.setExpiryDate(LocalDateTime.now().plusHours(1));
 
@@ -129,29 +152,46 @@ class PasswordResetTokenRepositoryTest {
 
         Optional<PasswordResetToken> foundToken = passwordResetTokenRepository.findById(savedToken.getId());
         assertTrue(foundToken.isPresent(), "Saved token should be found by ID");
-        assertEquals("new-token-999", foundToken.get().getToken(), "Token string should match");
+        assertEquals("new-token-999", foundToken.get().getTokenHash(), "Token hash should match");
         assertEquals(testUser.getId(), foundToken.get().getUser().getId(), "User ID should match");
     }
 
     @Test
     void save_shouldThrowExceptionForDuplicateToken() {
         PasswordResetToken duplicateToken = new PasswordResetToken();
-        duplicateToken.setToken("reset-token-123"); // Same as testToken
+        duplicateToken.setTokenHash("reset-token-123"); // Same as testToken
         duplicateToken.setUser(testUser);
         duplicateToken.setExpiryDate(LocalDateTime.now().plusHours(1));
 
         assertThrows(DataIntegrityViolationException.class, () -> {
-            passwordResetTokenRepository.save(duplicateToken);
-            entityManager.flush();
+            passwordResetTokenRepository.saveAndFlush(duplicateToken);
         }, "Should throw exception for duplicate token");
     }
 
+    @Test
+    void save_shouldRejectDuplicateTokenHashForAnotherUser() {
+        User otherUser = new User();
+        otherUser.setUsername("otherUser");
+        otherUser.setEmail("other@example.com");
+        otherUser.setPassword("password");
+        entityManager.persist(otherUser);
+
+        PasswordResetToken duplicateToken = new PasswordResetToken();
+        duplicateToken.setTokenHash("reset-token-123");
+        duplicateToken.setUser(otherUser);
+        duplicateToken.setExpiryDate(LocalDateTime.now().plusHours(1));
+
+        assertThrows(DataIntegrityViolationException.class, () -> {
+            passwordResetTokenRepository.saveAndFlush(duplicateToken);
+        }, "Token hashes should be unique");
+    }
+
     @Test
     void findById_shouldReturnTokenWhenIdExists() {
         Optional<PasswordResetToken> foundToken = passwordResetTokenRepository.findById(testToken.getId());
 
         assertTrue(foundToken.isPresent(), "Token should be found by ID");
-        assertEquals("reset-token-123", foundToken.get().getToken(), "Token string should match");
+        assertEquals("reset-token-123", foundToken.get().getTokenHash(), "Token hash should match");
     }
 
     @Test
@@ -189,7 +229,7 @@ class PasswordResetTokenRepositoryTest {
         passwordResetTokenRepository.deleteById(999L);
         entityManager.flush();
 
-        Optional<PasswordResetToken> foundToken = passwordResetTokenRepository.findByToken("reset-token-123");
+        Optional<PasswordResetToken> foundToken = passwordResetTokenRepository.findByTokenHash("reset-token-123");
         assertTrue(foundToken.isPresent(), "Existing token should remain unaffected");
     }
 }
\ No newline at end of file
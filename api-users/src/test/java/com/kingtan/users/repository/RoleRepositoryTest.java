@@ -68,8 +68,7 @@ class RoleRepositoryTest {
         duplicateRole.setName("ROLE_USER"); // Same as testRole
 
         assertThrows(DataIntegrityViolationException.class, () -> {
-            roleRepository.save(duplicateRole);
-            entityManager.flush();
+            roleRepository.saveAndFlush(duplicateRole);
         }, "Should throw exception for duplicate role name");
     }
 
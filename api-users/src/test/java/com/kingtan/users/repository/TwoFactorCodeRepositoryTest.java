@@ -0,0 +1,60 @@
+package com.kingtan.users.repository;
+
+import com.kingtan.users.model.TwoFactorCode;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@ActiveProfiles("test")
+class TwoFactorCodeRepositoryTest {
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private TwoFactorCodeRepository twoFactorCodeRepository;
+
+    private TwoFactorCode persistCode(String code, LocalDateTime expiresAt, boolean used) {
+        TwoFactorCode twoFactorCode = new TwoFactorCode();
+        twoFactorCode.setCode(code);
+        twoFactorCode.setUserId(1L);
+        twoFactorCode.setExpiresAt(expiresAt);
+        twoFactorCode.setUsed(used);
+        return entityManager.persistAndFlush(twoFactorCode);
+    }
+
+    @Test
+    void deleteExpiredChunk_shouldDeleteExpiredCodesUpToTheLimit() {
+        LocalDateTime now = LocalDateTime.now();
+        persistCode("111111", now.minusMinutes(10), false);
+        persistCode("222222", now.minusMinutes(5), false);
+        TwoFactorCode valid = persistCode("333333", now.plusMinutes(5), false);
+
+        assertEquals(1, twoFactorCodeRepository.deleteExpiredChunk(now, 1));
+        assertEquals(1, twoFactorCodeRepository.deleteExpiredChunk(now, 1));
+        assertEquals(0, twoFactorCodeRepository.deleteExpiredChunk(now, 1));
+
+        List<TwoFactorCode> remaining = twoFactorCodeRepository.findAll();
+        assertEquals(List.of(valid.getId()), remaining.stream().map(TwoFactorCode::getId).toList());
+    }
+
+    @Test
+    void deleteUsedChunk_shouldDeleteOnlyUsedCodes() {
+        LocalDateTime now = LocalDateTime.now();
+        persistCode("111111", now.plusMinutes(5), true);
+        TwoFactorCode unused = persistCode("222222", now.plusMinutes(5), false);
+
+        assertEquals(1, twoFactorCodeRepository.deleteUsedChunk(10));
+
+        List<TwoFactorCode> remaining = twoFactorCodeRepository.findAll();
+        assertEquals(List.of(unused.getId()), remaining.stream().map(TwoFactorCode::getId).toList());
+    }
+}
@@ -9,11 +9,14 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
 import org.springframework.test.context.ActiveProfiles;
 
 import java.util.HashSet;
+import java.util.List;
 import java.util.Optional;
 import java.util.Set;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -116,6 +119,130 @@ class UserRepositoryTest {
         assertFalse(exists, "Non-existent email should not exist");
     }
 
+    @Test
+    void findSummaryByUsername_shouldAggregateRoleNames() {
+        Role adminRole = new Role();
+        adminRole.setName("ROLE_ADMIN");
+        entityManager.persist(adminRole);
+        testUser.getRoles().add(adminRole);
+        entityManager.persistAndFlush(testUser);
+        entityManager.clear();
+
+        Optional<UserSummary> summary = userRepository.findSummaryByUsername("testUser");
+
+        assertTrue(summary.isPresent(), "Summary should be found by username");
+        assertEquals(testUser.getId(), summary.get().id());
+        assertEquals("test@example.com", summary.get().email());
+        assertEquals(Set.of("ROLE_USER", "ROLE_ADMIN"), summary.get().toDTO().roles());
+    }
+
+    @Test
+    void findSummaryByUsername_shouldReturnEmptyWhenUsernameDoesNotExist() {
+        assertFalse(userRepository.findSummaryByUsername("nonExistent").isPresent());
+    }
+
+    @Test
+    void findSummariesAfter_shouldReturnKeysetPage() {
+        User second = new User();
+        second.setUsername("secondUser");
+        second.setEmail("second@example.com");
+        second.setPassword("password");
+        entityManager.persist(second);
+        User third = new User();
+        third.setUsername("thirdUser");
+        third.setEmail("third@example.com");
+        third.setPassword("password");
+        entityManager.persistAndFlush(third);
+
+        List<UserSummary> firstPage = userRepository.findSummariesAfter(0L, Limit.of(2));
+        List<UserSummary> secondPage = userRepository.findSummariesAfter(firstPage.get(1).id(), Limit.of(2));
+
+        assertEquals(List.of("testUser", "secondUser"), firstPage.stream().map(UserSummary::username).toList());
+        assertEquals(Set.of("ROLE_USER"), firstPage.get(0).toDTO().roles());
+        assertEquals(Set.of(), firstPage.get(1).toDTO().roles(), "Users without roles should still be listed");
+        assertEquals(List.of("thirdUser"), secondPage.stream().map(UserSummary::username).toList());
+    }
+
+    @Test
+    void streamSummaries_shouldReturnAllUsersInIdOrder() {
+        User second = new User();
+        second.setUsername("secondUser");
+        second.setEmail("second@example.com");
+        second.setPassword("password");
+        entityManager.persistAndFlush(second);
+
+        try (Stream<UserSummary> summaries = userRepository.streamSummaries()) {
+            assertEquals(List.of("testUser", "secondUser"), summaries.map(UserSummary::username).toList());
+        }
+    }
+
+    @Test
+    void streamExportRows_shouldIncludeRolesAndEnabledFlag() {
+        User disabled = new User();
+        disabled.setUsername("disabledUser");
+        disabled.setEmail("disabled@example.com");
+        disabled.setPassword("password");
+        disabled.setEnabled(false);
+        entityManager.persistAndFlush(disabled);
+
+        try (Stream<UserExportRow> rows = userRepository.streamExportRows()) {
+            List<UserExportRow> exported = rows.toList();
+            assertEquals(List.of("testUser", "disabledUser"), exported.stream().map(UserExportRow::username).toList());
+            assertEquals("ROLE_USER", exported.get(0).roleNames());
+            assertTrue(exported.get(0).enabled());
+            assertFalse(exported.get(1).enabled());
+        }
+    }
+
+    @Test
+    void findSummariesByIdInOrUsernameIn_shouldMatchEitherKey() {
+        User second = new User();
+        second.setUsername("secondUser");
+        second.setEmail("second@example.com");
+        second.setPassword("password");
+        entityManager.persistAndFlush(second);
+
+        List<UserSummary> both = userRepository.findSummariesByIdInOrUsernameIn(
+                Set.of(testUser.getId(), -1L), Set.of("secondUser", "nonExistent"));
+        List<UserSummary> byUsernameOnly = userRepository.findSummariesByIdInOrUsernameIn(Set.of(), Set.of("testUser"));
+
+        assertEquals(List.of("testUser", "secondUser"), both.stream().map(UserSummary::username).toList());
+        assertEquals(Set.of("ROLE_USER"), both.get(0).toDTO().roles());
+        assertEquals(List.of("testUser"), byUsernameOnly.stream().map(UserSummary::username).toList());
+    }
+
+    @Test
+    void findVersionByUsername_shouldFollowRoleChanges() {
+        long before = userRepository.findVersionByUsername("testUser").orElseThrow().version();
+        Role adminRole = new Role();
+        adminRole.setName("ROLE_ADMIN");
+        entityManager.persist(adminRole);
+
+        // Only the join table changes, which must still invalidate the user's ETag
+        testUser.getRoles().add(adminRole);
+        entityManager.flush();
+
+        UserVersion after = userRepository.findVersionByUsername("testUser").orElseThrow();
+        assertEquals(testUser.getId(), after.id());
+        assertEquals(before + 1, after.version());
+        assertEquals(after.version(), userRepository.findSummaryByUsername("testUser").orElseThrow().version());
+        assertFalse(userRepository.findVersionByUsername("nonExistent").isPresent());
+    }
+
+    @Test
+    void findVersionsAfter_shouldReturnSameRowsAsSummaryPage() {
+        User second = new User();
+        second.setUsername("secondUser");
+        second.setEmail("second@example.com");
+        second.setPassword("password");
+        entityManager.persistAndFlush(second);
+
+        List<UserVersion> versions = userRepository.findVersionsAfter(0L, Limit.of(10));
+
+        assertEquals(userRepository.findSummariesAfter(0L, Limit.of(10)).stream().map(UserSummary::id).toList(),
+                versions.stream().map(UserVersion::id).toList());
+    }
+
     @Test
     void save_shouldPersistUserWithRoles() {
         Role newRole = new Role();
@@ -152,8 +279,7 @@ class UserRepositoryTest {
         duplicateUser.setRoles(new HashSet<>());
 
         assertThrows(DataIntegrityViolationException.class, () -> {
-            userRepository.save(duplicateUser);
-            entityManager.flush();
+            userRepository.saveAndFlush(duplicateUser);
         }, "Should throw exception for duplicate username");
     }
 
@@ -167,8 +293,7 @@ class UserRepositoryTest {
         duplicateUser.setRoles(new HashSet<>());
 
         assertThrows(DataIntegrityViolationException.class, () -> {
-            userRepository.save(duplicateUser);
-            entityManager.flush();
+            userRepository.saveAndFlush(duplicateUser);
         }, "Should throw exception for duplicate email");
     }
 
@@ -182,4 +307,21 @@ class UserRepositoryTest {
             entityManager.flush();
         }, "Should throw exception for duplicate role name");
     }
-}
\ No newline at end of file
+
+    @Test
+    void saveAll_shouldAssignPooledIdsBeforeAnyInsert() {
+        List<User> users = Stream.of("batchA", "batchB", "batchC").map(name -> {
+            User user = new User();
+            user.setUsername(name);
+            user.setEmail(name + "@example.com");
+            user.setPassword("password");
+            return user;
+        }).toList();
+
+        userRepository.saveAll(users);
+
+        // Ids come from the sequence block already reserved, so the inserts can still be batched at flush
+        users.forEach(user -> assertNotNull(user.getId()));
+        assertEquals(3, userRepository.findKeysAfter(testUser.getId(), Limit.of(10)).size());
+    }
+}
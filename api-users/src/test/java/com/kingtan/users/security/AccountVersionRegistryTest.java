@@ -0,0 +1,57 @@
+package com.kingtan.users.security;
+
+import com.kingtan.users.service.UserAccountChangedEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AccountVersionRegistryTest {
+
+    private AccountVersionRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        registry = new AccountVersionRegistry(Duration.ofSeconds(60), 100);
+    }
+
+    @Test
+    void isCurrent_shouldMatchRecordedVersionOnly() {
+        registry.record("testuser", 2L, registry.generation());
+
+        assertTrue(registry.isCurrent("testuser", 2L));
+        assertFalse(registry.isCurrent("testuser", 1L), "Older token versions should not be trusted");
+        assertFalse(registry.isCurrent("otheruser", 2L), "Unknown users should not be trusted");
+    }
+
+    @Test
+    void isCurrent_shouldExpireEntriesAfterTtl() {
+        registry = new AccountVersionRegistry(Duration.ZERO, 100);
+        registry.record("testuser", 2L, registry.generation());
+
+        assertFalse(registry.isCurrent("testuser", 2L));
+    }
+
+    @Test
+    void onAccountChanged_shouldForgetUser() {
+        registry.record("testuser", 2L, registry.generation());
+
+        registry.onAccountChanged(new UserAccountChangedEvent("testuser"));
+
+        assertFalse(registry.isCurrent("testuser", 2L));
+    }
+
+    @Test
+    void record_shouldDropVersionReadBeforeAnInvalidation() {
+        long readGeneration = registry.generation();
+        registry.invalidate("testuser");
+
+        registry.record("testuser", 2L, readGeneration);
+
+        assertFalse(registry.isCurrent("testuser", 2L), "A version read before the change must not be trusted");
+        registry.record("testuser", 3L, registry.generation());
+        assertTrue(registry.isCurrent("testuser", 3L));
+    }
+}
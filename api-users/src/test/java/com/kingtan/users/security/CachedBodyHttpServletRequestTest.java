@@ -0,0 +1,135 @@
+package com.kingtan.users.security;
+
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletInputStream;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CachedBodyHttpServletRequestTest {
+
+    private static MockHttpServletRequest request(String body) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/v1/auth/login");
+        request.setContent(body.getBytes(StandardCharsets.UTF_8));
+        return request;
+    }
+
+    @Test
+    void getInputStream_shouldReplayCachedBody() throws IOException {
+        CachedBodyHttpServletRequest cached = new CachedBodyHttpServletRequest(request("{\"a\":1}"), 16);
+
+        assertEquals("{\"a\":1}", new String(cached.getCachedBody(), StandardCharsets.UTF_8));
+        assertEquals("{\"a\":1}", new String(cached.getInputStream().readAllBytes(), StandardCharsets.UTF_8));
+        assertTrue(cached.getInputStream().isFinished());
+    }
+
+    @Test
+    void getInputStream_shouldReplayPrefixThenRestOfOversizedBody() throws IOException {
+        CachedBodyHttpServletRequest cached = new CachedBodyHttpServletRequest(request("0123456789"), 4);
+
+        assertNull(cached.getCachedBody());
+        assertEquals("0123456789", new String(cached.getInputStream().readAllBytes(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void setReadListener_shouldDeliverCachedBody() throws IOException {
+        CachedBodyHttpServletRequest cached = new CachedBodyHttpServletRequest(request("{\"a\":1}"), 16);
+        ServletInputStream in = cached.getInputStream();
+        RecordingListener listener = new RecordingListener(in);
+
+        in.setReadListener(listener);
+
+        assertEquals(List.of("data", "all"), listener.events);
+        assertEquals("{\"a\":1}", listener.body.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void setReadListener_shouldRegisterOnOriginalStreamForOversizedBody() throws IOException {
+        StubServletInputStream original = new StubServletInputStream("0123456789");
+        MockHttpServletRequest request = new MockHttpServletRequest() {
+            @Override
+            public ServletInputStream getInputStream() {
+                return original;
+            }
+        };
+        CachedBodyHttpServletRequest cached = new CachedBodyHttpServletRequest(request, 4);
+        ServletInputStream in = cached.getInputStream();
+        RecordingListener listener = new RecordingListener(in);
+
+        in.setReadListener(listener);
+        original.listener.onDataAvailable();
+        original.listener.onAllDataRead();
+
+        assertEquals(List.of("data", "all"), listener.events);
+        assertEquals("0123456789", listener.body.toString(StandardCharsets.UTF_8));
+    }
+
+    private static class RecordingListener implements ReadListener {
+
+        private final ServletInputStream in;
+        private final List<String> events = new ArrayList<>();
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+        RecordingListener(ServletInputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public void onDataAvailable() throws IOException {
+            events.add("data");
+            byte[] buffer = new byte[3];
+            int n;
+            while (in.isReady() && (n = in.read(buffer)) != -1) {
+                body.write(buffer, 0, n);
+            }
+        }
+
+        @Override
+        public void onAllDataRead() {
+            events.add("all");
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            events.add("error");
+        }
+    }
+
+    private static class StubServletInputStream extends ServletInputStream {
+
+        private final ByteArrayInputStream body;
+        private ReadListener listener;
+
+        StubServletInputStream(String body) {
+            this.body = new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public int read() {
+            return body.read();
+        }
+
+        @Override
+        public boolean isFinished() {
+            return body.available() == 0;
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setReadListener(ReadListener readListener) {
+            this.listener = readListener;
+        }
+    }
+}
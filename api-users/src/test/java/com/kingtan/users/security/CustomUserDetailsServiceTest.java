@@ -3,12 +3,15 @@ package com.kingtan.users.security;
 import com.kingtan.users.model.Role;
 import com.kingtan.users.model.User;
 import com.kingtan.users.repository.UserRepository;
+import com.kingtan.users.service.UserAccountChangedEvent;
+import com.kingtan.users.service.UserExistenceFilter;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.test.context.ActiveProfiles;
@@ -17,6 +20,7 @@ import java.util.Optional;
 import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -26,6 +30,12 @@ class CustomUserDetailsServiceTest {
     @Mock
     private UserRepository userRepository;
 
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private UserExistenceFilter userExistenceFilter;
+
     @InjectMocks
     private CustomUserDetailsService userDetailsService;
 
@@ -34,12 +44,23 @@ class CustomUserDetailsServiceTest {
     @BeforeEach
     void setUp() {
         user = new User();
+        user.setId(1L);
         user.setUsername("testuser");
         user.setPassword("encodedPassword");
         user.setEnabled(true);
         Role role = new Role();
         role.setName("ROLE_USER");
         user.setRoles(Set.of(role));
+        lenient().when(userExistenceFilter.mightContainUsername(any())).thenReturn(true);
+    }
+
+    @Test
+    void testLoadUserByUsername_UnknownToFilter_SkipsDatabase() {
+        when(userExistenceFilter.mightContainUsername("nobody")).thenReturn(false);
+
+        assertThrows(UsernameNotFoundException.class, () -> userDetailsService.loadUserByUsername("nobody"));
+
+        verifyNoInteractions(userRepository);
     }
 
     @Test
@@ -52,6 +73,9 @@ class CustomUserDetailsServiceTest {
         assertEquals("encodedPassword", userDetails.getPassword());
         assertTrue(userDetails.getAuthorities().stream()
                 .anyMatch(auth -> auth.getAuthority().equals("ROLE_USER")));
+        UserPrincipal principal = assertInstanceOf(UserPrincipal.class, userDetails);
+        assertEquals(1L, principal.getId());
+        assertEquals(0, principal.getAuthVersion());
     }
 
     @Test
@@ -60,4 +84,19 @@ class CustomUserDetailsServiceTest {
 
         assertThrows(UsernameNotFoundException.class, () -> userDetailsService.loadUserByUsername("testuser"));
     }
+
+    @Test
+    void testUpdatePassword_StoresNewHashAndEvictsCachedCopies() {
+        when(userRepository.findByUsername("testuser")).thenReturn(Optional.of(user));
+        UserDetails loaded = userDetailsService.loadUserByUsername("testuser");
+
+        UserDetails updated = userDetailsService.updatePassword(loaded, "{bcrypt}newHash");
+
+        assertEquals("{bcrypt}newHash", user.getPassword());
+        assertEquals("{bcrypt}newHash", updated.getPassword());
+        assertInstanceOf(UserPrincipal.class, updated);
+        assertEquals(0, user.getAuthVersion(), "Rehashing must not invalidate issued tokens");
+        verify(userRepository).save(user);
+        verify(eventPublisher).publishEvent(new UserAccountChangedEvent("testuser"));
+    }
 }
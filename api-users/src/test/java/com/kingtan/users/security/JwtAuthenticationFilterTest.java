@@ -17,7 +17,12 @@ import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 
 import java.io.IOException;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
 
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -42,12 +47,20 @@ class JwtAuthenticationFilterTest {
     @Mock
     private UserDetails userDetails;
 
+    @Mock
+    private AccountVersionRegistry accountVersions;
+
+    @Mock
+    private UserDetailsCache userCache;
+
     @InjectMocks
     private JwtAuthenticationFilter jwtAuthenticationFilter;
 
     private final String testUsername = "testUser";
     private final String validToken = "validToken";
     private final String bearerToken = "Bearer " + validToken;
+    private final JwtClaims claims = new JwtClaims(testUsername, null, Set.of(), null, new Date(), new Date(System.currentTimeMillis() + 60_000));
+    private final JwtClaims statefulClaims = new JwtClaims(testUsername, 1L, Set.of("ROLE_USER"), 2L, new Date(), new Date(System.currentTimeMillis() + 60_000));
 
     @BeforeEach
     void setUp() {
@@ -102,15 +115,16 @@ class JwtAuthenticationFilterTest {
     void doFilterInternal_shouldAuthenticateWithValidToken() throws ServletException, IOException {
         when(request.getRequestURI()).thenReturn("/api/protected");
         when(request.getHeader("Authorization")).thenReturn(bearerToken);
-        when(jwtUtil.validateToken(validToken)).thenReturn(true);
-        when(jwtUtil.getUsernameFromToken(validToken)).thenReturn(testUsername);
+        when(jwtUtil.verifyToken(validToken)).thenReturn(Optional.of(claims));
         when(userDetailsService.loadUserByUsername(testUsername)).thenReturn(userDetails);
 
         jwtAuthenticationFilter.doFilterInternal(request, response, filterChain);
 
-        verify(jwtUtil).validateToken(validToken);
-        verify(jwtUtil).getUsernameFromToken(validToken);
+        verify(jwtUtil).verifyToken(validToken);
+        verify(jwtUtil, never()).validateToken(any());
+        verify(jwtUtil, never()).getUsernameFromToken(any());
         verify(userDetailsService).loadUserByUsername(testUsername);
+        verify(userCache).putUserInCache(userDetails);
         verify(filterChain).doFilter(request, response);
 
         SecurityContext securityContext = SecurityContextHolder.getContext();
@@ -123,11 +137,11 @@ class JwtAuthenticationFilterTest {
     void doFilterInternal_shouldNotAuthenticateWithInvalidToken() throws ServletException, IOException {
         when(request.getRequestURI()).thenReturn("/api/protected");
         when(request.getHeader("Authorization")).thenReturn(bearerToken);
-        when(jwtUtil.validateToken(validToken)).thenReturn(false);
+        when(jwtUtil.verifyToken(validToken)).thenReturn(Optional.empty());
 
         jwtAuthenticationFilter.doFilterInternal(request, response, filterChain);
 
-        verify(jwtUtil).validateToken(validToken);
+        verify(jwtUtil).verifyToken(validToken);
         verifyNoInteractions(userDetailsService);
         verify(filterChain).doFilter(request, response);
         assertNull(SecurityContextHolder.getContext().getAuthentication());
@@ -161,16 +175,83 @@ class JwtAuthenticationFilterTest {
     void doFilterInternal_shouldHandleUserNotFoundException() throws ServletException, IOException {
         when(request.getRequestURI()).thenReturn("/api/protected");
         when(request.getHeader("Authorization")).thenReturn(bearerToken);
-        when(jwtUtil.validateToken(validToken)).thenReturn(true);
-        when(jwtUtil.getUsernameFromToken(validToken)).thenReturn(testUsername);
+        when(jwtUtil.verifyToken(validToken)).thenReturn(Optional.of(claims));
         when(userDetailsService.loadUserByUsername(testUsername)).thenThrow(new UsernameNotFoundException("User not found"));
 
         jwtAuthenticationFilter.doFilterInternal(request, response, filterChain);
 
-        verify(jwtUtil).validateToken(validToken);
-        verify(jwtUtil).getUsernameFromToken(validToken);
+        verify(jwtUtil).verifyToken(validToken);
+        verify(jwtUtil, never()).validateToken(any());
+        verify(jwtUtil, never()).getUsernameFromToken(any());
         verify(userDetailsService).loadUserByUsername(testUsername);
         verify(filterChain).doFilter(request, response);
         assertNull(SecurityContextHolder.getContext().getAuthentication());
     }
-}
\ No newline at end of file
+
+    @Test
+    void doFilterInternal_shouldAuthenticateFromClaimsWhenVersionIsCurrent() throws ServletException, IOException {
+        when(request.getRequestURI()).thenReturn("/api/protected");
+        when(request.getHeader("Authorization")).thenReturn(bearerToken);
+        when(jwtUtil.verifyToken(validToken)).thenReturn(Optional.of(statefulClaims));
+        when(accountVersions.isCurrent(testUsername, 2L)).thenReturn(true);
+
+        jwtAuthenticationFilter.doFilterInternal(request, response, filterChain);
+
+        verifyNoInteractions(userDetailsService);
+        verify(filterChain).doFilter(request, response);
+        UserPrincipal principal = assertInstanceOf(UserPrincipal.class,
+                SecurityContextHolder.getContext().getAuthentication().getPrincipal());
+        assertEquals(1L, principal.getId());
+        assertEquals(testUsername, principal.getUsername());
+        assertTrue(SecurityContextHolder.getContext().getAuthentication().getAuthorities().stream()
+                .anyMatch(auth -> auth.getAuthority().equals("ROLE_USER")));
+    }
+
+    @Test
+    void doFilterInternal_shouldLoadUserAndRecordVersionWhenNotKnown() throws ServletException, IOException {
+        UserPrincipal principal = new UserPrincipal(1L, testUsername, "encoded", true, 2L, List.of());
+        when(request.getRequestURI()).thenReturn("/api/protected");
+        when(request.getHeader("Authorization")).thenReturn(bearerToken);
+        when(jwtUtil.verifyToken(validToken)).thenReturn(Optional.of(statefulClaims));
+        when(accountVersions.isCurrent(testUsername, 2L)).thenReturn(false);
+        when(userDetailsService.loadUserByUsername(testUsername)).thenReturn(principal);
+
+        jwtAuthenticationFilter.doFilterInternal(request, response, filterChain);
+
+        verify(accountVersions).record(testUsername, 2L, 0L);
+        verify(filterChain).doFilter(request, response);
+        assertEquals(principal, SecurityContextHolder.getContext().getAuthentication().getPrincipal());
+    }
+
+    @Test
+    void doFilterInternal_shouldRejectTokenWithStaleVersion() throws ServletException, IOException {
+        UserPrincipal principal = new UserPrincipal(1L, testUsername, "encoded", true, 3L, List.of());
+        when(request.getRequestURI()).thenReturn("/api/protected");
+        when(request.getHeader("Authorization")).thenReturn(bearerToken);
+        when(jwtUtil.verifyToken(validToken)).thenReturn(Optional.of(statefulClaims));
+        when(userDetailsService.loadUserByUsername(testUsername)).thenReturn(principal);
+
+        jwtAuthenticationFilter.doFilterInternal(request, response, filterChain);
+
+        verify(accountVersions, never()).record(any(), anyLong(), anyLong());
+        verify(filterChain).doFilter(request, response);
+        assertNull(SecurityContextHolder.getContext().getAuthentication());
+    }
+
+    @Test
+    void doFilterInternal_shouldRevalidateAgainstDatabaseNotUserCache() throws ServletException, IOException {
+        UserPrincipal principal = new UserPrincipal(1L, testUsername, "encoded", true, 3L, List.of());
+        when(request.getRequestURI()).thenReturn("/api/protected");
+        when(request.getHeader("Authorization")).thenReturn(bearerToken);
+        when(jwtUtil.verifyToken(validToken)).thenReturn(Optional.of(statefulClaims));
+        when(userDetailsService.loadUserByUsername(testUsername)).thenReturn(principal);
+
+        jwtAuthenticationFilter.doFilterInternal(request, response, filterChain);
+
+        // A cached copy may still carry version 2 after a change made on another instance
+        verify(userCache, never()).getUserFromCache(any());
+        verify(userCache).putUserInCache(principal);
+        verify(accountVersions, never()).record(any(), anyLong(), anyLong());
+        assertNull(SecurityContextHolder.getContext().getAuthentication());
+    }
+}
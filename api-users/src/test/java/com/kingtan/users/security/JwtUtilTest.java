@@ -7,9 +7,13 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.test.util.ReflectionTestUtils;
 
 import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -28,6 +32,7 @@ class JwtUtilTest {
         // Inject test values for private fields
         ReflectionTestUtils.setField(jwtUtil, "jwtSecret", testSecret);
         ReflectionTestUtils.setField(jwtUtil, "jwtExpiration", testExpiration);
+        jwtUtil.init();
     }
 
     @Test
@@ -115,4 +120,60 @@ class JwtUtilTest {
         String invalidToken = "invalid.token.string";
         assertThrows(Exception.class, () -> jwtUtil.getUsernameFromToken(invalidToken));
     }
-}
\ No newline at end of file
+
+    @Test
+    void verifyToken_shouldReturnClaimsForValidToken() {
+        String token = jwtUtil.generateToken(testUsername);
+
+        Optional<JwtClaims> claims = jwtUtil.verifyToken(token);
+
+        assertTrue(claims.isPresent());
+        assertEquals(testUsername, claims.get().subject());
+        assertTrue(claims.get().roles().isEmpty());
+        assertNotNull(claims.get().issuedAt());
+        assertTrue(claims.get().expiration().after(new Date()));
+    }
+
+    @Test
+    void verifyToken_shouldReturnEmptyForInvalidSignature() {
+        String invalidToken = Jwts.builder()
+                .setSubject(testUsername)
+                .setExpiration(new Date(System.currentTimeMillis() + testExpiration))
+                .signWith(SignatureAlgorithm.HS512, "12345678901234567890123456789012345678901234567890123456789012345678901234567890wrongSecret")
+                .compact();
+
+        assertTrue(jwtUtil.verifyToken(invalidToken).isEmpty());
+    }
+
+    @Test
+    void verifyToken_shouldReturnEmptyForExpiredToken() {
+        String expiredToken = Jwts.builder()
+                .setSubject(testUsername)
+                .setExpiration(new Date(System.currentTimeMillis() - 1000))
+                .signWith(SignatureAlgorithm.HS512, testSecret)
+                .compact();
+
+        assertTrue(jwtUtil.verifyToken(expiredToken).isEmpty());
+    }
+
+    @Test
+    void generateToken_withPrincipal_shouldEmbedAccountState() {
+        UserPrincipal principal = new UserPrincipal(7L, testUsername, "", true, 3,
+                List.of(new SimpleGrantedAuthority("ROLE_USER"), new SimpleGrantedAuthority("ROLE_ADMIN")));
+
+        JwtClaims claims = jwtUtil.verifyToken(jwtUtil.generateToken(principal)).orElseThrow();
+
+        assertEquals(testUsername, claims.subject());
+        assertEquals(7L, claims.userId());
+        assertEquals(Set.of("ROLE_USER", "ROLE_ADMIN"), claims.roles());
+        assertEquals(3L, claims.authVersion());
+    }
+
+    @Test
+    void verifyToken_shouldLeaveAccountStateNullForSubjectOnlyToken() {
+        JwtClaims claims = jwtUtil.verifyToken(jwtUtil.generateToken(testUsername)).orElseThrow();
+
+        assertNull(claims.userId());
+        assertNull(claims.authVersion());
+    }
+}
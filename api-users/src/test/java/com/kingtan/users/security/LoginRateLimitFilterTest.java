@@ -0,0 +1,108 @@
+package com.kingtan.users.security;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.FilterChain;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.util.StreamUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoginRateLimitFilterTest {
+
+    private LoginRateLimitFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        RateLimitProperties properties = new RateLimitProperties(true, 1000, Map.of(
+                "login", new RateLimitProperties.Endpoint("/api/v1/auth/login", "username",
+                        new RateLimitProperties.Limit(3, Duration.ofMinutes(1)),
+                        new RateLimitProperties.Limit(2, Duration.ofMinutes(1))),
+                "password-reset", new RateLimitProperties.Endpoint("/api/v1/auth/password/reset", "email",
+                        null, new RateLimitProperties.Limit(1, Duration.ofHours(1)))));
+        filter = new LoginRateLimitFilter(properties, new ObjectMapper());
+    }
+
+    private MockHttpServletRequest login(String username, String remoteAddr) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/v1/auth/login");
+        request.setRemoteAddr(remoteAddr);
+        request.setContentType("application/json");
+        request.setContent(("{\"username\":\"" + username + "\",\"password\":\"secret\"}").getBytes(StandardCharsets.UTF_8));
+        return request;
+    }
+
+    private MockHttpServletResponse perform(MockHttpServletRequest request) throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, new MockFilterChain());
+        return response;
+    }
+
+    @Test
+    void doFilter_shouldLimitPerAccountAcrossAddresses() throws Exception {
+        assertEquals(200, perform(login("alice", "10.0.0.1")).getStatus());
+        assertEquals(200, perform(login("Alice", "10.0.0.2")).getStatus());
+
+        MockHttpServletResponse rejected = perform(login("alice", "10.0.0.3"));
+
+        assertEquals(429, rejected.getStatus());
+        assertEquals("30", rejected.getHeader("Retry-After"));
+        assertEquals(1, filter.getRejectedCount());
+    }
+
+    @Test
+    void doFilter_shouldLimitPerAddressAcrossAccounts() throws Exception {
+        assertEquals(200, perform(login("a", "10.0.0.9")).getStatus());
+        assertEquals(200, perform(login("b", "10.0.0.9")).getStatus());
+        assertEquals(200, perform(login("c", "10.0.0.9")).getStatus());
+
+        assertEquals(429, perform(login("d", "10.0.0.9")).getStatus());
+    }
+
+    @Test
+    void doFilter_shouldReplayInspectedBodyToChain() throws Exception {
+        AtomicReference<String> body = new AtomicReference<>();
+        FilterChain chain = (request, response) ->
+                body.set(StreamUtils.copyToString(request.getInputStream(), StandardCharsets.UTF_8));
+
+        filter.doFilter(login("alice", "10.0.0.1"), new MockHttpServletResponse(), chain);
+
+        assertEquals("{\"username\":\"alice\",\"password\":\"secret\"}", body.get());
+    }
+
+    @Test
+    void doFilter_shouldLimitPasswordResetByEmailParameter() throws Exception {
+        MockHttpServletRequest first = new MockHttpServletRequest("POST", "/api/v1/auth/password/reset");
+        first.setParameter("email", "user@example.com");
+        MockHttpServletRequest second = new MockHttpServletRequest("POST", "/api/v1/auth/password/reset");
+        second.setParameter("email", "USER@example.com");
+
+        assertEquals(200, perform(first).getStatus());
+        assertEquals(429, perform(second).getStatus());
+    }
+
+    @Test
+    void doFilter_shouldIgnoreOtherEndpoints() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/v1/users/alice");
+            assertEquals(200, perform(request).getStatus());
+        }
+    }
+
+    @Test
+    void doFilter_shouldDoNothingWhenDisabled() throws Exception {
+        filter = new LoginRateLimitFilter(new RateLimitProperties(false, 0, Map.of(
+                "login", new RateLimitProperties.Endpoint("/api/v1/auth/login", "username", null,
+                        new RateLimitProperties.Limit(1, Duration.ofMinutes(1))))), new ObjectMapper());
+
+        assertEquals(200, perform(login("alice", "10.0.0.1")).getStatus());
+        assertEquals(200, perform(login("alice", "10.0.0.1")).getStatus());
+    }
+}
@@ -0,0 +1,68 @@
+package com.kingtan.users.security;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OffloadingPasswordEncoderTest {
+
+    private PasswordHashingExecutor executor;
+    private final AtomicReference<String> hashingThread = new AtomicReference<>();
+
+    private final PasswordEncoder recordingEncoder = new PasswordEncoder() {
+        @Override
+        public String encode(CharSequence rawPassword) {
+            hashingThread.set(Thread.currentThread().getName());
+            return "hashed:" + rawPassword;
+        }
+
+        @Override
+        public boolean matches(CharSequence rawPassword, String encodedPassword) {
+            hashingThread.set(Thread.currentThread().getName());
+            return encodedPassword.equals("hashed:" + rawPassword);
+        }
+
+        @Override
+        public boolean upgradeEncoding(String encodedPassword) {
+            hashingThread.set(Thread.currentThread().getName());
+            return true;
+        }
+    };
+
+    private OffloadingPasswordEncoder encoder;
+
+    @BeforeEach
+    void setUp() {
+        executor = new PasswordHashingExecutor(1, 10, Duration.ofSeconds(1));
+        encoder = new OffloadingPasswordEncoder(recordingEncoder, executor);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    void matches_shouldRunOnHashingPool() {
+        assertTrue(encoder.matches("secret", "hashed:secret"));
+        assertTrue(hashingThread.get().startsWith("password-hash-"));
+    }
+
+    @Test
+    void encode_shouldRunOnHashingPool() {
+        assertEquals("hashed:secret", encoder.encode("secret"));
+        assertTrue(hashingThread.get().startsWith("password-hash-"));
+    }
+
+    @Test
+    void upgradeEncoding_shouldRunOnCallingThread() {
+        assertTrue(encoder.upgradeEncoding("hashed:secret"));
+        assertEquals(Thread.currentThread().getName(), hashingThread.get());
+    }
+}
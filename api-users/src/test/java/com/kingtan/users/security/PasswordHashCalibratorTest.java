@@ -0,0 +1,38 @@
+package com.kingtan.users.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.function.IntToLongFunction;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PasswordHashCalibratorTest {
+
+    // Doubles per strength step like BCrypt: 1 ms at strength 4
+    private final IntToLongFunction doublingCost = strength -> Duration.ofMillis(1).toNanos() << (strength - 4);
+
+    @Test
+    void calibrate_shouldPickHighestStrengthWithinBudget() {
+        // strength 10 takes 64 ms, 11 takes 128 ms
+        assertEquals(10, PasswordHashCalibrator.calibrate(doublingCost, Duration.ofMillis(100), 8, 16));
+        assertEquals(11, PasswordHashCalibrator.calibrate(doublingCost, Duration.ofMillis(128), 8, 16));
+    }
+
+    @Test
+    void calibrate_shouldNeverGoBelowMinimum() {
+        assertEquals(10, PasswordHashCalibrator.calibrate(doublingCost, Duration.ofMillis(1), 10, 16));
+    }
+
+    @Test
+    void calibrate_shouldStopAtMaximum() {
+        assertEquals(12, PasswordHashCalibrator.calibrate(doublingCost, Duration.ofHours(1), 8, 12));
+    }
+
+    @Test
+    void calibrateBcryptStrength_shouldMeasureRealHashing() {
+        int strength = PasswordHashCalibrator.calibrateBcryptStrength(Duration.ZERO, 4);
+
+        assertEquals(4, strength, "Nothing above the minimum fits a zero budget");
+    }
+}
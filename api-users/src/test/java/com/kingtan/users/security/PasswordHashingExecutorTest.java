@@ -0,0 +1,84 @@
+package com.kingtan.users.security;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PasswordHashingExecutorTest {
+
+    private PasswordHashingExecutor executor;
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    void execute_shouldRunOnHashingThreadAndReturnResult() {
+        executor = new PasswordHashingExecutor(2, 10, Duration.ofSeconds(1));
+
+        String threadName = executor.execute(() -> Thread.currentThread().getName());
+
+        assertTrue(threadName.startsWith("password-hash-"));
+        assertEquals(2, executor.getPoolSize());
+        assertEquals(1, executor.getCompletedCount());
+    }
+
+    @Test
+    void execute_shouldDefaultToOneThreadPerCore() {
+        executor = new PasswordHashingExecutor(0, 10, Duration.ofSeconds(1));
+
+        assertEquals(Runtime.getRuntime().availableProcessors(), executor.getPoolSize());
+    }
+
+    @Test
+    void execute_shouldRejectWhenQueueIsFull() throws Exception {
+        executor = new PasswordHashingExecutor(1, 1, Duration.ofSeconds(3));
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        CompletableFuture<Boolean> busy = CompletableFuture.supplyAsync(() -> executor.execute(() -> {
+            running.countDown();
+            return release.await(5, TimeUnit.SECONDS);
+        }));
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        CompletableFuture<Boolean> queued = CompletableFuture.supplyAsync(() -> executor.execute(() -> true));
+        waitForQueueDepth(1);
+
+        HashingCapacityExceededException e = assertThrows(HashingCapacityExceededException.class,
+                () -> executor.execute(() -> true));
+        assertEquals(3, e.getRetryAfterSeconds());
+        assertEquals(1, executor.getRejectedCount());
+
+        release.countDown();
+        assertTrue(busy.get(5, TimeUnit.SECONDS));
+        assertTrue(queued.get(5, TimeUnit.SECONDS));
+        assertTrue(executor.getMaxWait().compareTo(Duration.ZERO) > 0, "Queued task should record its wait");
+    }
+
+    @Test
+    void execute_shouldPropagateRuntimeExceptions() {
+        executor = new PasswordHashingExecutor(1, 10, Duration.ofSeconds(1));
+
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> executor.execute(() -> {
+            throw new IllegalStateException("boom");
+        }));
+        assertEquals("boom", e.getMessage());
+        assertEquals(0, executor.getCompletedCount(), "Failed hashes should not count as completed");
+        assertEquals(1, executor.getWaitCount());
+    }
+
+    private void waitForQueueDepth(int depth) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (executor.getQueueDepth() < depth && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(depth, executor.getQueueDepth());
+    }
+}
@@ -3,13 +3,16 @@ package com.kingtan.users.security;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
 import org.springframework.security.config.annotation.authentication.configuration.AuthenticationConfiguration;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.http.SessionCreationPolicy;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers;
 import org.springframework.security.web.DefaultSecurityFilterChain;
@@ -42,6 +45,15 @@ public class SecurityConfigTest {
     @Mock
     private JwtAuthenticationFilter jwtAuthenticationFilter;
 
+    @Mock
+    private UserDetailsCache userDetailsCache;
+
+    @Mock
+    private PasswordHashingExecutor passwordHashingExecutor;
+
+    @Mock
+    private LoginRateLimitFilter loginRateLimitFilter;
+
     @Mock
     private HttpSecurity httpSecurity;
 
@@ -57,6 +69,9 @@ public class SecurityConfigTest {
         ReflectionTestUtils.setField(securityConfig, "jwtUtil", jwtUtil);
         ReflectionTestUtils.setField(securityConfig, "userDetailsService", userDetailsService);
         ReflectionTestUtils.setField(securityConfig, "jwtAuthenticationFilter", jwtAuthenticationFilter);
+        ReflectionTestUtils.setField(securityConfig, "userDetailsCache", userDetailsCache);
+        ReflectionTestUtils.setField(securityConfig, "passwordHashingExecutor", passwordHashingExecutor);
+        ReflectionTestUtils.setField(securityConfig, "loginRateLimitFilter", loginRateLimitFilter);
     }
 
     @Test
@@ -128,13 +143,68 @@ public class SecurityConfigTest {
     }
 
     @Test
-    void passwordEncoder_shouldReturnBCryptPasswordEncoder() {
+    void securityFilterChain_shouldRateLimitBeforeJwtAuthentication() throws Exception {
+        when(httpSecurity.csrf(any())).thenReturn(httpSecurity);
+        when(httpSecurity.sessionManagement(any())).thenReturn(httpSecurity);
+        when(httpSecurity.authorizeHttpRequests(any())).thenReturn(httpSecurity);
+        when(httpSecurity.httpBasic(any())).thenReturn(httpSecurity);
+        when(httpSecurity.addFilterBefore(any(), any())).thenReturn(httpSecurity);
+        when(httpSecurity.build()).thenReturn(mock(DefaultSecurityFilterChain.class));
+
+        securityConfig.securityFilterChain(httpSecurity);
+
+        InOrder inOrder = inOrder(httpSecurity);
+        inOrder.verify(httpSecurity).addFilterBefore(loginRateLimitFilter, UsernamePasswordAuthenticationFilter.class);
+        inOrder.verify(httpSecurity).addFilterBefore(jwtAuthenticationFilter, UsernamePasswordAuthenticationFilter.class);
+    }
+
+    @Test
+    void passwordEncoder_shouldEncodeWithPrefixedBCrypt() {
         // Call the method under test
         PasswordEncoder passwordEncoder = securityConfig.passwordEncoder();
 
-        // Assert that the returned object is an instance of BCryptPasswordEncoder
-        assertNotNull(passwordEncoder);
-        assertTrue(passwordEncoder instanceof org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder);
+        String hash = passwordEncoder.encode("secret");
+        assertTrue(hash.startsWith("{bcrypt}$2a$10$"), "New hashes should be prefixed BCrypt at the configured strength");
+        assertTrue(passwordEncoder.matches("secret", hash));
+        assertFalse(passwordEncoder.upgradeEncoding(hash));
+    }
+
+    @Test
+    void passwordEncoder_shouldMatchAndUpgradeLegacyUnprefixedHashes() {
+        PasswordEncoder passwordEncoder = securityConfig.passwordEncoder();
+        String legacyHash = new BCryptPasswordEncoder().encode("secret");
+
+        assertTrue(passwordEncoder.matches("secret", legacyHash));
+        assertTrue(passwordEncoder.upgradeEncoding(legacyHash));
+    }
+
+    @Test
+    void passwordEncoder_shouldUpgradeWeakerBCryptStrength() {
+        ReflectionTestUtils.setField(securityConfig, "bcryptStrength", 11);
+        PasswordEncoder passwordEncoder = securityConfig.passwordEncoder();
+
+        assertTrue(passwordEncoder.upgradeEncoding("{bcrypt}" + new BCryptPasswordEncoder(10).encode("secret")));
+        assertFalse(passwordEncoder.upgradeEncoding(passwordEncoder.encode("secret")));
+    }
+
+    @Test
+    void passwordEncoder_shouldSupportArgon2AndKeepVerifyingBCrypt() {
+        String bcryptHash = securityConfig.passwordEncoder().encode("secret");
+        ReflectionTestUtils.setField(securityConfig, "passwordEncoderId", "argon2");
+        PasswordEncoder passwordEncoder = securityConfig.passwordEncoder();
+
+        String hash = passwordEncoder.encode("secret");
+        assertTrue(hash.startsWith("{argon2}"));
+        assertTrue(passwordEncoder.matches("secret", hash));
+        assertTrue(passwordEncoder.matches("secret", bcryptHash));
+        assertTrue(passwordEncoder.upgradeEncoding(bcryptHash), "BCrypt hashes should migrate to Argon2");
+    }
+
+    @Test
+    void passwordEncoder_shouldRejectUnknownAlgorithm() {
+        ReflectionTestUtils.setField(securityConfig, "passwordEncoderId", "md5");
+
+        assertThrows(IllegalArgumentException.class, () -> securityConfig.passwordEncoder());
     }
 
     @Test
@@ -150,4 +220,27 @@ public class SecurityConfigTest {
         assertNotNull(authenticationManager);
         assertSame(mockAuthenticationManager, authenticationManager);
     }
-}
\ No newline at end of file
+
+    @Test
+    void authenticationProvider_shouldShareUserDetailsCache() {
+        DaoAuthenticationProvider provider = securityConfig.authenticationProvider();
+
+        assertSame(userDetailsCache, provider.getUserCache());
+    }
+
+    @Test
+    void authenticationProvider_shouldRehashPasswordsThroughUserDetailsService() {
+        DaoAuthenticationProvider provider = securityConfig.authenticationProvider();
+
+        assertSame(userDetailsService, ReflectionTestUtils.getField(provider, "userDetailsPasswordService"));
+    }
+
+    @Test
+    void authenticationProvider_shouldHashOnBoundedHashingPool() {
+        DaoAuthenticationProvider provider = securityConfig.authenticationProvider();
+
+        OffloadingPasswordEncoder encoder = assertInstanceOf(OffloadingPasswordEncoder.class,
+                ReflectionTestUtils.invokeMethod(provider, "getPasswordEncoder"));
+        assertSame(passwordHashingExecutor, ReflectionTestUtils.getField(encoder, "executor"));
+    }
+}
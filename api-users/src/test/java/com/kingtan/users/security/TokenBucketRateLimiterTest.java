@@ -0,0 +1,99 @@
+package com.kingtan.users.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenBucketRateLimiterTest {
+
+    private final AtomicLong now = new AtomicLong(1_000_000_000L);
+
+    private TokenBucketRateLimiter limiter(int capacity, Duration period, long maxKeys) {
+        return new TokenBucketRateLimiter(capacity, period, maxKeys, now::get);
+    }
+
+    @Test
+    void tryAcquire_shouldAllowBurstUpToCapacity() {
+        TokenBucketRateLimiter limiter = limiter(3, Duration.ofSeconds(3), 100);
+
+        assertEquals(0, limiter.tryAcquire("client"));
+        assertEquals(0, limiter.tryAcquire("client"));
+        assertEquals(0, limiter.tryAcquire("client"));
+        long wait = limiter.tryAcquire("client");
+
+        assertEquals(TimeUnit.SECONDS.toNanos(1), wait, "Next permit is one refill interval away");
+    }
+
+    @Test
+    void tryAcquire_shouldRefillOverTime() {
+        TokenBucketRateLimiter limiter = limiter(2, Duration.ofSeconds(2), 100);
+        limiter.tryAcquire("client");
+        limiter.tryAcquire("client");
+        assertTrue(limiter.tryAcquire("client") > 0);
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+
+        assertEquals(0, limiter.tryAcquire("client"));
+        assertTrue(limiter.tryAcquire("client") > 0, "Only one permit refilled after one interval");
+    }
+
+    @Test
+    void tryAcquire_shouldTrackKeysIndependently() {
+        TokenBucketRateLimiter limiter = limiter(1, Duration.ofMinutes(1), 100);
+
+        assertEquals(0, limiter.tryAcquire("a"));
+        assertTrue(limiter.tryAcquire("a") > 0);
+        assertEquals(0, limiter.tryAcquire("b"));
+    }
+
+    @Test
+    void tryAcquire_shouldBoundTrackedKeys() {
+        TokenBucketRateLimiter limiter = limiter(1, Duration.ofMinutes(1), 10);
+
+        for (int i = 0; i < 1000; i++) {
+            limiter.tryAcquire("client-" + i);
+        }
+
+        assertTrue(limiter.trackedKeys() <= 10, "Tracked keys should stay within the bound");
+    }
+
+    @Test
+    void tryAcquire_shouldExpireIdleKeysOnlyOnceTheirBucketIsFull() {
+        TokenBucketRateLimiter limiter = limiter(2, Duration.ofSeconds(10), 100);
+        limiter.tryAcquire("client");
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(11));
+
+        assertEquals(0, limiter.trackedKeys());
+    }
+
+    @Test
+    void tryAcquire_shouldNeverGrantMoreThanCapacityUnderContention() throws Exception {
+        TokenBucketRateLimiter limiter = limiter(50, Duration.ofHours(1), 100);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        AtomicInteger granted = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        for (int i = 0; i < 500; i++) {
+            pool.submit(() -> {
+                start.await();
+                if (limiter.tryAcquire("shared") == 0) {
+                    granted.incrementAndGet();
+                }
+                return null;
+            });
+        }
+        start.countDown();
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(50, granted.get());
+    }
+}
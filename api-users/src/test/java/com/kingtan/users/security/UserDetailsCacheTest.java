@@ -0,0 +1,65 @@
+package com.kingtan.users.security;
+
+import com.kingtan.users.service.UserAccountChangedEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UserDetailsCacheTest {
+
+    private UserDetailsCache cache;
+    private UserPrincipal principal;
+
+    @BeforeEach
+    void setUp() {
+        cache = new UserDetailsCache(100, Duration.ofMinutes(5));
+        principal = new UserPrincipal(1L, "testuser", "encodedPassword", true, 0,
+                List.of(new SimpleGrantedAuthority("ROLE_USER")));
+    }
+
+    @Test
+    void getUserFromCache_shouldReturnCachedUserAndCountHitsAndMisses() {
+        assertNull(cache.getUserFromCache("testuser"));
+
+        cache.putUserInCache(principal);
+        UserDetails cached = cache.getUserFromCache("testuser");
+
+        assertNotNull(cached);
+        assertEquals("encodedPassword", cached.getPassword());
+        assertEquals(1, cache.stats().hitCount());
+        assertEquals(1, cache.stats().missCount());
+    }
+
+    @Test
+    void getUserFromCache_shouldBeUnaffectedByErasedCredentials() {
+        cache.putUserInCache(principal);
+        principal.eraseCredentials();
+
+        UserPrincipal first = (UserPrincipal) cache.getUserFromCache("testuser");
+        first.eraseCredentials();
+
+        assertEquals("encodedPassword", cache.getUserFromCache("testuser").getPassword());
+    }
+
+    @Test
+    void putUserInCache_shouldIgnorePrincipalsWithoutPassword() {
+        cache.putUserInCache(new UserPrincipal(1L, "testuser", "", true, 0, List.of()));
+
+        assertNull(cache.getUserFromCache("testuser"));
+    }
+
+    @Test
+    void onAccountChanged_shouldEvictUser() {
+        cache.putUserInCache(principal);
+
+        cache.onAccountChanged(new UserAccountChangedEvent("testuser"));
+
+        assertNull(cache.getUserFromCache("testuser"));
+    }
+}
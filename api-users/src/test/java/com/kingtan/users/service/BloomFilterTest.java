@@ -0,0 +1,56 @@
+package com.kingtan.users.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BloomFilterTest {
+
+    @Test
+    void mightContain_shouldNeverMissAnAddedValue() {
+        BloomFilter filter = BloomFilter.create(10_000, 0.01);
+        IntStream.range(0, 10_000).forEach(i -> filter.put("user" + i));
+
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(filter.mightContain("user" + i), "user" + i + " should be reported present");
+        }
+    }
+
+    @Test
+    void mightContain_shouldKeepFalsePositivesNearTheConfiguredRate() {
+        BloomFilter filter = BloomFilter.create(10_000, 0.01);
+        IntStream.range(0, 10_000).forEach(i -> filter.put("user" + i + "@example.com"));
+
+        long falsePositives = IntStream.range(0, 100_000)
+                .filter(i -> filter.mightContain("stranger" + i + "@example.com"))
+                .count();
+
+        assertTrue(falsePositives < 2_000, "False positive rate too high: " + falsePositives + " of 100000");
+    }
+
+    @Test
+    void mightContain_shouldBeFalseForEmptyFilter() {
+        assertFalse(BloomFilter.create(100, 0.01).mightContain("anyone"));
+    }
+
+    @Test
+    void put_shouldBeSafeUnderConcurrentWriters() {
+        BloomFilter filter = BloomFilter.create(50_000, 0.01);
+
+        IntStream.range(0, 50_000).parallel().forEach(i -> filter.put("user" + i));
+
+        assertTrue(IntStream.range(0, 50_000).allMatch(i -> filter.mightContain("user" + i)));
+    }
+
+    @Test
+    void create_shouldSizeForExpectedInsertions() {
+        BloomFilter filter = BloomFilter.create(1_000, 0.01);
+
+        // ~9.6 bits and ~7 hashes per element at 1%
+        assertTrue(filter.bitCount() >= 9_585 && filter.bitCount() < 9_585 + 64);
+        assertEquals(7, filter.hashCount());
+        assertThrows(IllegalArgumentException.class, () -> BloomFilter.create(1_000, 1.0));
+    }
+}
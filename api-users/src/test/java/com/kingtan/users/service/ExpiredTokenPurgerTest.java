@@ -0,0 +1,84 @@
+package com.kingtan.users.service;
+
+import com.kingtan.users.repository.MailOutboxRepository;
+import com.kingtan.users.repository.PasswordResetTokenRepository;
+import com.kingtan.users.repository.TwoFactorCodeRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ExpiredTokenPurgerTest {
+
+    @Mock
+    private PasswordResetTokenRepository tokenRepository;
+
+    @Mock
+    private TwoFactorCodeRepository twoFactorCodeRepository;
+
+    @Mock
+    private MailOutboxRepository mailOutboxRepository;
+
+    private ExpiredTokenPurger purger;
+
+    @BeforeEach
+    void setUp() {
+        purger = new ExpiredTokenPurger(tokenRepository, twoFactorCodeRepository, mailOutboxRepository, 100,
+                Duration.ofDays(7));
+    }
+
+    @Test
+    void purge_shouldDeleteInChunksUntilAChunkIsNotFull() {
+        when(tokenRepository.deleteExpiredChunk(any(LocalDateTime.class), eq(100))).thenReturn(100, 100, 42);
+        when(twoFactorCodeRepository.deleteExpiredChunk(any(LocalDateTime.class), eq(100))).thenReturn(7);
+        when(twoFactorCodeRepository.deleteUsedChunk(100)).thenReturn(100, 0);
+        when(mailOutboxRepository.deleteFailedChunk(any(LocalDateTime.class), eq(100))).thenReturn(3);
+
+        purger.purge();
+
+        verify(tokenRepository, times(3)).deleteExpiredChunk(any(LocalDateTime.class), eq(100));
+        verify(twoFactorCodeRepository, times(1)).deleteExpiredChunk(any(LocalDateTime.class), eq(100));
+        verify(twoFactorCodeRepository, times(2)).deleteUsedChunk(100);
+        assertEquals(242, purger.getResetTokensPurged());
+        assertEquals(107, purger.getTwoFactorCodesPurged());
+        assertEquals(3, purger.getFailedMailsPurged());
+        assertEquals(352, purger.getLastRunPurged());
+    }
+
+    @Test
+    void purge_shouldKeepFailedMailForTheRetentionPeriod() {
+        LocalDateTime before = LocalDateTime.now();
+
+        purger.purge();
+
+        ArgumentCaptor<LocalDateTime> cutoff = ArgumentCaptor.forClass(LocalDateTime.class);
+        verify(mailOutboxRepository).deleteFailedChunk(cutoff.capture(), eq(100));
+        assertFalse(cutoff.getValue().isBefore(before.minusDays(7)));
+        assertTrue(cutoff.getValue().isBefore(before.minusDays(7).plusMinutes(1)));
+    }
+
+    @Test
+    void purge_shouldAccumulateTotalsAcrossRuns() {
+        when(tokenRepository.deleteExpiredChunk(any(LocalDateTime.class), eq(100))).thenReturn(5, 0);
+        when(twoFactorCodeRepository.deleteExpiredChunk(any(LocalDateTime.class), eq(100))).thenReturn(1, 0);
+        when(twoFactorCodeRepository.deleteUsedChunk(100)).thenReturn(0);
+
+        purger.purge();
+        purger.purge();
+
+        assertEquals(5, purger.getResetTokensPurged());
+        assertEquals(1, purger.getTwoFactorCodesPurged());
+        assertEquals(0, purger.getLastRunPurged(), "Second run found nothing to delete");
+    }
+}
@@ -0,0 +1,196 @@
+package com.kingtan.users.service;
+
+import com.icegreen.greenmail.junit5.GreenMailExtension;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import com.kingtan.users.model.MailOutbox;
+import com.kingtan.users.repository.MailOutboxRepository;
+import jakarta.mail.internet.MimeMessage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class MailDispatcherTest {
+
+    // Local fake SMTP server, restarted for every test
+    @RegisterExtension
+    static GreenMailExtension greenMail = new GreenMailExtension(ServerSetupTest.SMTP);
+
+    @Mock
+    private MailOutboxRepository outboxRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private List<MailOutbox> pending;
+
+    @BeforeEach
+    void setUp() {
+        pending = new ArrayList<>();
+        for (long id = 1; id <= 3; id++) {
+            MailOutbox mail = new MailOutbox();
+            mail.setId(id);
+            mail.setRecipient("user" + id + "@example.com");
+            mail.setSubject("Password Reset Request");
+            mail.setBody("Use this token to reset your password: token-" + id);
+            mail.setCreatedAt(LocalDateTime.now());
+            mail.setNextAttemptAt(LocalDateTime.now());
+            pending.add(mail);
+        }
+    }
+
+    private MailDispatcher dispatcher(JavaMailSender mailSender, int batchSize) {
+        return new MailDispatcher(outboxRepository, mailSender, new TransactionTemplate(transactionManager),
+                batchSize, 3, Duration.ofSeconds(30), Duration.ofMinutes(5), Duration.ofMinutes(15));
+    }
+
+    private JavaMailSenderImpl smtpSender() {
+        JavaMailSenderImpl sender = new JavaMailSenderImpl();
+        sender.setHost("127.0.0.1");
+        sender.setPort(greenMail.getSmtp().getPort());
+        return sender;
+    }
+
+    @Test
+    void dispatchPending_shouldDeliverBatchAndDeleteSentMail() throws Exception {
+        when(outboxRepository.claimDue(any(LocalDateTime.class), eq(10)))
+                .thenReturn(pending);
+
+        dispatcher(smtpSender(), 10).dispatchPending();
+
+        MimeMessage[] received = greenMail.getReceivedMessages();
+        assertEquals(3, received.length);
+        assertEquals("Password Reset Request", received[0].getSubject());
+        verify(outboxRepository).deleteAllByIdInBatch(List.of(1L, 2L, 3L));
+        verify(outboxRepository, never()).save(any(MailOutbox.class));
+    }
+
+    @Test
+    void dispatchBatch_shouldSendOutsideTheClaimAndSettleTransactions() {
+        LocalDateTime before = LocalDateTime.now();
+        List<Boolean> sentInTransaction = new ArrayList<>();
+        TransactionTemplate tracking = new TransactionTemplate(transactionManager) {
+            @Override
+            public <T> T execute(org.springframework.transaction.support.TransactionCallback<T> action) {
+                sentInTransaction.add(greenMail.getReceivedMessages().length > 0);
+                return super.execute(action);
+            }
+        };
+        when(outboxRepository.claimDue(any(LocalDateTime.class), eq(10))).thenReturn(pending);
+        MailDispatcher dispatcher = new MailDispatcher(outboxRepository, smtpSender(), tracking,
+                10, 3, Duration.ofSeconds(30), Duration.ofMinutes(5), Duration.ofMinutes(15));
+
+        dispatcher.dispatchBatch();
+
+        assertEquals(List.of(false, true), sentInTransaction, "Claim commits before sending, settle runs after");
+        assertFalse(pending.get(0).getNextAttemptAt().isBefore(before.plusMinutes(15)), "Claimed rows are leased");
+    }
+
+    @Test
+    void dispatchPending_shouldKeepDrainingWhileBatchesAreFull() {
+        when(outboxRepository.claimDue(any(LocalDateTime.class), eq(2)))
+                .thenReturn(pending.subList(0, 2))
+                .thenReturn(pending.subList(2, 3));
+
+        dispatcher(smtpSender(), 2).dispatchPending();
+
+        assertEquals(3, greenMail.getReceivedMessages().length);
+        verify(outboxRepository, times(2)).claimDue(any(LocalDateTime.class), eq(2));
+    }
+
+    @Test
+    void dispatchPending_shouldRescheduleAllMailWhenServerIsUnreachable() {
+        when(outboxRepository.claimDue(any(LocalDateTime.class), eq(10)))
+                .thenReturn(pending);
+        JavaMailSenderImpl unreachable = smtpSender();
+        greenMail.stop();
+
+        LocalDateTime before = LocalDateTime.now();
+        dispatcher(unreachable, 10).dispatchPending();
+
+        verify(outboxRepository, never()).deleteAllByIdInBatch(any());
+        for (MailOutbox mail : pending) {
+            verify(outboxRepository).save(mail);
+            assertEquals(1, mail.getAttempts());
+            assertEquals(MailOutbox.Status.PENDING, mail.getStatus());
+            assertFalse(mail.getNextAttemptAt().isBefore(before.plusSeconds(30)), "Retry should be backed off");
+            assertNotNull(mail.getLastError());
+        }
+    }
+
+    @Test
+    void dispatchBatch_shouldOnlyRescheduleMessagesTheServerRejected() {
+        JavaMailSender mailSender = mock(JavaMailSender.class);
+        JavaMailSenderImpl real = smtpSender();
+        when(mailSender.createMimeMessage()).thenAnswer(invocation -> real.createMimeMessage());
+        when(outboxRepository.claimDue(any(LocalDateTime.class), eq(10)))
+                .thenReturn(pending);
+        doAnswer(invocation -> {
+            MimeMessage rejected = null;
+            for (Object message : invocation.getArguments()) {
+                if (message instanceof MimeMessage mimeMessage
+                        && mimeMessage.getAllRecipients()[0].toString().equals("user2@example.com")) {
+                    rejected = mimeMessage;
+                }
+            }
+            throw new MailSendException(Map.of(rejected, new IllegalStateException("550 mailbox unavailable")));
+        }).when(mailSender).send(any(MimeMessage[].class));
+
+        MailDispatcher dispatcher = dispatcher(mailSender, 10);
+        assertEquals(3, dispatcher.dispatchBatch());
+
+        assertEquals(2, dispatcher.getSentCount());
+        assertEquals(1, dispatcher.getFailedAttemptCount());
+        assertEquals(0, dispatcher.getAbandonedCount());
+        verify(outboxRepository).deleteAllByIdInBatch(List.of(1L, 3L));
+        verify(outboxRepository).save(pending.get(1));
+        assertEquals(1, pending.get(1).getAttempts());
+        assertEquals("550 mailbox unavailable", pending.get(1).getLastError());
+    }
+
+    @Test
+    void reschedule_shouldGiveUpAfterMaxAttempts() {
+        pending.get(0).setAttempts(2);
+        when(outboxRepository.claimDue(any(LocalDateTime.class), eq(10)))
+                .thenReturn(pending.subList(0, 1));
+        JavaMailSenderImpl unreachable = smtpSender();
+        greenMail.stop();
+
+        MailDispatcher dispatcher = dispatcher(unreachable, 10);
+        dispatcher.dispatchPending();
+
+        assertEquals(3, pending.get(0).getAttempts());
+        assertEquals(MailOutbox.Status.FAILED, pending.get(0).getStatus());
+        assertEquals(MailDispatcher.REDACTED_BODY, pending.get(0).getBody(), "The reset token must not be kept");
+        assertEquals(1, dispatcher.getAbandonedCount());
+    }
+
+    @Test
+    void backoff_shouldDoubleUpToTheMaximum() {
+        MailDispatcher dispatcher = dispatcher(smtpSender(), 10);
+
+        assertEquals(Duration.ofSeconds(30), dispatcher.backoff(1));
+        assertEquals(Duration.ofSeconds(60), dispatcher.backoff(2));
+        assertEquals(Duration.ofSeconds(240), dispatcher.backoff(4));
+        assertEquals(Duration.ofMinutes(5), dispatcher.backoff(10));
+    }
+}
@@ -7,13 +7,12 @@ import com.kingtan.users.repository.UserRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
-import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.security.crypto.password.PasswordEncoder;
-
-import jakarta.mail.internet.MimeMessage;
 import org.springframework.test.context.ActiveProfiles;
 
 import java.time.LocalDateTime;
@@ -21,6 +20,7 @@ import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -34,13 +34,16 @@ class PasswordResetServiceTest {
     private PasswordResetTokenRepository tokenRepository;
 
     @Mock
-    private JavaMailSender mailSender;
+    private MailOutboxService mailOutbox;
 
     @Mock
     private PasswordEncoder passwordEncoder;
 
     @Mock
-    private MimeMessage mimeMessage;
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private UserExistenceFilter userExistenceFilter;
 
     @InjectMocks
     private PasswordResetService passwordResetService;
@@ -58,21 +61,37 @@ class PasswordResetServiceTest {
 
         token = new PasswordResetToken();
         token.setId(1L);
-        token.setToken("reset-token");
+        token.setTokenHash(PasswordResetService.hashToken("reset-token"));
         token.setUser(user);
         token.setExpiryDate(LocalDateTime.now().plusHours(1));
+        lenient().when(userExistenceFilter.mightContainEmail(any())).thenReturn(true);
+    }
+
+    @Test
+    void testCreatePasswordResetToken_UnknownToFilter_SkipsDatabase() {
+        when(userExistenceFilter.mightContainEmail("nobody@example.com")).thenReturn(false);
+
+        RuntimeException exception = assertThrows(RuntimeException.class,
+                () -> passwordResetService.createPasswordResetToken("nobody@example.com"));
+
+        assertEquals("User not found", exception.getMessage());
+        verifyNoInteractions(userRepository, tokenRepository, mailOutbox);
     }
 
     @Test
     void testCreatePasswordResetToken_Success() throws Exception {
         when(userRepository.findByEmail("testuser@example.com")).thenReturn(Optional.of(user));
         when(tokenRepository.save(any(PasswordResetToken.class))).thenReturn(token);
-        when(mailSender.createMimeMessage()).thenReturn(mimeMessage);
 
         passwordResetService.createPasswordResetToken("testuser@example.com");
 
-        verify(tokenRepository, times(1)).save(any(PasswordResetToken.class));
-        verify(mailSender, times(1)).send(any(MimeMessage.class));
+        ArgumentCaptor<PasswordResetToken> saved = ArgumentCaptor.forClass(PasswordResetToken.class);
+        ArgumentCaptor<String> body = ArgumentCaptor.forClass(String.class);
+        verify(tokenRepository, times(1)).save(saved.capture());
+        verify(mailOutbox, times(1)).enqueue(eq("testuser@example.com"), eq("Password Reset Request"), body.capture());
+        String mailedToken = body.getValue().substring("Use this token to reset your password: ".length());
+        assertEquals(PasswordResetService.hashToken(mailedToken), saved.getValue().getTokenHash(),
+                "Only the hash of the mailed token should be stored");
     }
 
     @Test
@@ -81,11 +100,12 @@ class PasswordResetServiceTest {
 
         assertThrows(RuntimeException.class, () -> passwordResetService.createPasswordResetToken("testuser@example.com"));
         verify(tokenRepository, never()).save(any(PasswordResetToken.class));
+        verifyNoInteractions(mailOutbox);
     }
 
     @Test
     void testResetPassword_Success() {
-        when(tokenRepository.findByToken("reset-token")).thenReturn(Optional.of(token));
+        when(tokenRepository.findByTokenHash(PasswordResetService.hashToken("reset-token"))).thenReturn(Optional.of(token));
         when(passwordEncoder.encode("newPassword")).thenReturn("encodedNewPassword");
         when(userRepository.save(any(User.class))).thenReturn(user);
 
@@ -93,12 +113,14 @@ class PasswordResetServiceTest {
 
         verify(userRepository, times(1)).save(any(User.class));
         verify(tokenRepository, times(1)).delete(token);
+        verify(eventPublisher).publishEvent(new UserAccountChangedEvent("testuser"));
         assertEquals("encodedNewPassword", user.getPassword());
+        assertEquals(1, user.getAuthVersion(), "Tokens issued with the old password should be invalidated");
     }
 
     @Test
     void testResetPassword_InvalidToken() {
-        when(tokenRepository.findByToken("invalid-token")).thenReturn(Optional.empty());
+        when(tokenRepository.findByTokenHash(PasswordResetService.hashToken("invalid-token"))).thenReturn(Optional.empty());
 
         assertThrows(RuntimeException.class, () -> passwordResetService.resetPassword("invalid-token", "newPassword"));
         verify(userRepository, never()).save(any(User.class));
@@ -107,9 +129,19 @@ class PasswordResetServiceTest {
     @Test
     void testResetPassword_ExpiredToken() {
         token.setExpiryDate(LocalDateTime.now().minusHours(1));
-        when(tokenRepository.findByToken("reset-token")).thenReturn(Optional.of(token));
+        when(tokenRepository.findByTokenHash(PasswordResetService.hashToken("reset-token"))).thenReturn(Optional.of(token));
 
         assertThrows(RuntimeException.class, () -> passwordResetService.resetPassword("reset-token", "newPassword"));
         verify(userRepository, never()).save(any(User.class));
     }
+
+    @Test
+    void testHashToken_IsFixedLengthHex() {
+        String hash = PasswordResetService.hashToken("reset-token");
+
+        assertEquals(64, hash.length());
+        assertTrue(hash.matches("[0-9a-f]{64}"));
+        assertEquals(hash, PasswordResetService.hashToken("reset-token"));
+        assertNotEquals(hash, PasswordResetService.hashToken("reset-token2"));
+    }
 }
@@ -0,0 +1,74 @@
+package com.kingtan.users.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RequestCoalescerTest {
+
+    private final RequestCoalescer<String, String> coalescer = new RequestCoalescer<>();
+
+    @Test
+    void load_shouldShareInFlightLoadBetweenConcurrentCallers() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<String> first = executor.submit(() -> coalescer.load("alice", () -> {
+                loads.incrementAndGet();
+                loading.countDown();
+                await(release);
+                return "profile";
+            }));
+            assertTrue(loading.await(5, TimeUnit.SECONDS));
+            Future<String> second = executor.submit(() -> coalescer.load("alice", () -> {
+                loads.incrementAndGet();
+                return "second load";
+            }));
+            while (coalescer.coalescedCount() == 0) {
+                Thread.onSpinWait();
+            }
+            release.countDown();
+
+            assertEquals("profile", first.get(5, TimeUnit.SECONDS));
+            assertEquals("profile", second.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void load_shouldNotCacheFinishedLoads() {
+        AtomicInteger loads = new AtomicInteger();
+
+        coalescer.load("alice", () -> "v" + loads.incrementAndGet());
+        String second = coalescer.load("alice", () -> "v" + loads.incrementAndGet());
+
+        assertEquals("v2", second);
+        assertEquals(0, coalescer.coalescedCount());
+    }
+
+    @Test
+    void load_shouldRethrowLoaderExceptionAndAllowRetry() {
+        IllegalStateException failure = new IllegalStateException("database down");
+
+        assertSame(failure, assertThrows(IllegalStateException.class,
+                () -> coalescer.load("alice", () -> { throw failure; })));
+        assertEquals("ok", coalescer.load("alice", () -> "ok"));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.kingtan.users.service;
+
+import com.kingtan.users.model.Role;
+import com.kingtan.users.repository.RoleRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class RoleRegistryTest {
+
+    @Mock
+    private RoleRepository roleRepository;
+
+    private RoleRegistry roleRegistry;
+
+    private Role userRole;
+    private Role adminRole;
+
+    @BeforeEach
+    void setUp() {
+        roleRegistry = new RoleRegistry(roleRepository, Duration.ZERO);
+        userRole = new Role();
+        userRole.setId(1L);
+        userRole.setName("ROLE_USER");
+        adminRole = new Role();
+        adminRole.setId(2L);
+        adminRole.setName("ROLE_ADMIN");
+    }
+
+    @Test
+    void findByName_shouldLoadRolesOnceAndResolveFromMemory() {
+        when(roleRepository.findAll()).thenReturn(List.of(userRole, adminRole));
+
+        assertEquals(Optional.of(userRole), roleRegistry.findByName("ROLE_USER"));
+        assertEquals(Optional.of(adminRole), roleRegistry.findByName("ROLE_ADMIN"));
+        assertEquals(Optional.of(userRole), roleRegistry.findByName("ROLE_USER"));
+
+        verify(roleRepository, times(1)).findAll();
+    }
+
+    @Test
+    void findByName_shouldReloadOnUnknownName() {
+        when(roleRepository.findAll()).thenReturn(List.of(userRole)).thenReturn(List.of(userRole, adminRole));
+        roleRegistry.refresh();
+
+        assertEquals(Optional.of(adminRole), roleRegistry.findByName("ROLE_ADMIN"));
+        verify(roleRepository, times(2)).findAll();
+    }
+
+    @Test
+    void findByName_shouldReturnEmptyWhenRoleDoesNotExist() {
+        when(roleRepository.findAll()).thenReturn(List.of(userRole));
+
+        assertTrue(roleRegistry.findByName("ROLE_INVALID").isEmpty());
+    }
+
+    @Test
+    void findByName_shouldNotReloadForUnknownNamesWithinTheInterval() {
+        roleRegistry = new RoleRegistry(roleRepository, Duration.ofMinutes(1));
+        when(roleRepository.findAll()).thenReturn(List.of(userRole));
+        roleRegistry.refresh();
+
+        for (int i = 0; i < 100; i++) {
+            assertTrue(roleRegistry.findByName("ROLE_BOGUS_" + i).isEmpty());
+        }
+
+        verify(roleRepository, times(1)).findAll();
+    }
+}
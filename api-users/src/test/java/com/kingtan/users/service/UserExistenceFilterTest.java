@@ -0,0 +1,114 @@
+package com.kingtan.users.service;
+
+import com.kingtan.users.repository.UserKeys;
+import com.kingtan.users.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class UserExistenceFilterTest {
+
+    @Mock
+    private UserRepository userRepository;
+
+    private UserExistenceFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        filter = new UserExistenceFilter(userRepository, true, 1_000, 0.01, 2, Duration.ofMinutes(1));
+    }
+
+    @Test
+    void mightContain_shouldReportEverythingPresentUntilBuilt() {
+        assertFalse(filter.isReady());
+        assertTrue(filter.mightContainUsername("anyone"));
+        assertTrue(filter.mightContainEmail("anyone@example.com"));
+        assertEquals(0, filter.getShortCircuitedLookups());
+    }
+
+    @Test
+    void rebuild_shouldLoadAllUsersInKeysetPages() {
+        when(userRepository.count()).thenReturn(3L);
+        when(userRepository.findKeysAfter(0L, Limit.of(2))).thenReturn(List.of(
+                new UserKeys(1L, "alice", "alice@example.com"),
+                new UserKeys(2L, "bob", "bob@example.com")));
+        when(userRepository.findKeysAfter(2L, Limit.of(2))).thenReturn(List.of(
+                new UserKeys(5L, "carol", "carol@example.com")));
+
+        filter.rebuild();
+
+        assertTrue(filter.isReady());
+        assertTrue(filter.mightContainUsername("alice"));
+        assertTrue(filter.mightContainUsername("carol"));
+        assertTrue(filter.mightContainEmail("bob@example.com"));
+        assertFalse(filter.mightContainUsername("mallory"));
+        assertFalse(filter.mightContainEmail("mallory@example.com"));
+        assertEquals(2, filter.getShortCircuitedLookups());
+    }
+
+    @Test
+    void addUser_shouldMakeNewUserVisibleImmediately() {
+        when(userRepository.findKeysAfter(0L, Limit.of(2))).thenReturn(List.of());
+        filter.rebuild();
+
+        filter.addUser("dave", "dave@example.com");
+
+        assertTrue(filter.mightContainUsername("dave"));
+        assertTrue(filter.mightContainEmail("dave@example.com"));
+    }
+
+    @Test
+    void refresh_shouldAddUsersChangedSinceTheLastScanRegardlessOfId() {
+        when(userRepository.findKeysAfter(0L, Limit.of(2))).thenReturn(List.of(
+                new UserKeys(1500L, "alice", "alice@example.com")));
+        LocalDateTime beforeBuild = LocalDateTime.now();
+        filter.rebuild();
+        // A low pooled id from another instance's block, and a rename that kept its id
+        when(userRepository.findKeysChangedSince(any(LocalDateTime.class), eq(0L), eq(Limit.of(2)))).thenReturn(List.of(
+                new UserKeys(51L, "erin", "erin@example.com"),
+                new UserKeys(1500L, "alicia", "alicia@example.com")));
+
+        filter.refresh();
+
+        ArgumentCaptor<LocalDateTime> since = ArgumentCaptor.forClass(LocalDateTime.class);
+        verify(userRepository).findKeysChangedSince(since.capture(), eq(0L), eq(Limit.of(2)));
+        assertFalse(since.getValue().isAfter(beforeBuild.minusMinutes(1).plusSeconds(5)),
+                "Scan starts the overlap before the build started");
+        assertTrue(filter.mightContainUsername("erin"));
+        assertTrue(filter.mightContainUsername("alicia"));
+        assertTrue(filter.mightContainEmail("alicia@example.com"));
+    }
+
+    @Test
+    void refresh_shouldDoNothingBeforeTheFirstBuild() {
+        filter.refresh();
+
+        verifyNoInteractions(userRepository);
+    }
+
+    @Test
+    void disabledFilter_shouldNeverQueryOrShortCircuit() {
+        UserExistenceFilter disabled = new UserExistenceFilter(userRepository, false, 1_000, 0.01, 2, Duration.ofMinutes(1));
+
+        disabled.rebuild();
+
+        verify(userRepository, never()).findKeysAfter(anyLong(), any(Limit.class));
+        assertFalse(disabled.isReady());
+        assertTrue(disabled.mightContainUsername("mallory"));
+    }
+}
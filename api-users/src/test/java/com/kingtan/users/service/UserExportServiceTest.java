@@ -0,0 +1,76 @@
+package com.kingtan.users.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kingtan.users.repository.UserExportRow;
+import com.kingtan.users.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class UserExportServiceTest {
+
+    @Mock
+    private UserRepository userRepository;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private UserExportService exportService;
+    private final AtomicBoolean streamClosed = new AtomicBoolean();
+
+    @BeforeEach
+    void setUp() {
+        exportService = new UserExportService(userRepository, objectMapper);
+        lenient().when(userRepository.streamExportRows()).thenReturn(Stream.of(
+                new UserExportRow(1L, "alice", "alice@example.com", true, "ROLE_USER,ROLE_ADMIN"),
+                new UserExportRow(2L, "bob \"the builder\"", "bob@example.com", false, null)
+        ).onClose(() -> streamClosed.set(true)));
+    }
+
+    @Test
+    void export_shouldWriteOneJsonObjectPerLine() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        assertEquals(2, exportService.export(out, UserFileFormat.NDJSON));
+
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(2, lines.length);
+        JsonNode first = objectMapper.readTree(lines[0]);
+        assertEquals(1, first.get("id").asLong());
+        assertEquals("ROLE_ADMIN", first.get("roles").get(1).asText());
+        assertTrue(first.get("enabled").asBoolean());
+        JsonNode second = objectMapper.readTree(lines[1]);
+        assertEquals("bob \"the builder\"", second.get("username").asText());
+        assertEquals(0, second.get("roles").size());
+        assertTrue(streamClosed.get(), "Cursor should be closed");
+    }
+
+    @Test
+    void export_shouldWriteCsvWithHeaderAndQuoting() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        exportService.export(out, UserFileFormat.CSV);
+
+        assertEquals("id,username,email,roles,enabled\n"
+                + "1,alice,alice@example.com,\"ROLE_USER,ROLE_ADMIN\",true\n"
+                + "2,\"bob \"\"the builder\"\"\",bob@example.com,,false\n", out.toString(StandardCharsets.UTF_8));
+        assertTrue(streamClosed.get(), "Cursor should be closed");
+    }
+
+    @Test
+    void csvField_shouldOnlyQuoteWhenNeeded() {
+        assertEquals("plain", UserExportService.csvField("plain"));
+        assertEquals("\"a\nb\"", UserExportService.csvField("a\nb"));
+        assertEquals("", UserExportService.csvField(null));
+    }
+}
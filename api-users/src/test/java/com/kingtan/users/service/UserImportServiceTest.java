@@ -0,0 +1,209 @@
+package com.kingtan.users.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kingtan.users.dto.ImportResult;
+import com.kingtan.users.model.Role;
+import com.kingtan.users.model.User;
+import com.kingtan.users.repository.UserKeys;
+import com.kingtan.users.repository.UserRepository;
+import jakarta.validation.Validation;
+import org.hibernate.exception.ConstraintViolationException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class UserImportServiceTest {
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private RoleRegistry roleRegistry;
+
+    @Mock
+    private PasswordEncoder passwordEncoder;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private UserExistenceFilter userExistenceFilter;
+
+    private UserImportService importService;
+    private final List<User> saved = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        Role userRole = new Role();
+        userRole.setName("ROLE_USER");
+        lenient().when(roleRegistry.findByName("ROLE_USER")).thenReturn(Optional.of(userRole));
+        lenient().when(passwordEncoder.encode(anyString())).thenAnswer(invocation -> "hash:" + invocation.getArgument(0));
+        lenient().when(userRepository.saveAll(any())).thenAnswer(invocation -> {
+            Iterable<User> users = invocation.getArgument(0);
+            users.forEach(saved::add);
+            return List.of();
+        });
+        importService = new UserImportService(userRepository, roleRegistry, passwordEncoder,
+                Validation.buildDefaultValidatorFactory().getValidator(), new ObjectMapper(),
+                new TransactionTemplate(transactionManager), userExistenceFilter, 2, 2, 3);
+    }
+
+    @AfterEach
+    void tearDown() {
+        importService.shutdown();
+    }
+
+    private static InputStream body(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void importUsers_shouldInsertCsvRowsInChunksWithHashedPasswords() throws Exception {
+        ImportResult result = importService.importUsers(body("""
+                email,username,password
+                alice@example.com,alice,secret1
+                bob@example.com,bob,secret2
+                carol@example.com,carol,secret3
+                """), UserFileFormat.CSV);
+
+        assertEquals(3, result.imported());
+        assertEquals(0, result.failed());
+        verify(userRepository, times(2)).saveAll(any());
+        assertEquals(List.of("alice", "bob", "carol"), saved.stream().map(User::getUsername).toList());
+        assertEquals("hash:secret3", saved.get(2).getPassword());
+        assertEquals("ROLE_USER", saved.get(0).getRoles().iterator().next().getName());
+        verify(userExistenceFilter).addUser("carol", "carol@example.com");
+    }
+
+    @Test
+    void importUsers_shouldReportInvalidRowsByLineAndKeepGoing() throws Exception {
+        ImportResult result = importService.importUsers(body("""
+                username,email,password
+                alice,not-an-email,secret
+                ,bob@example.com,secret
+                carol,carol@example.com
+                dave,dave@example.com,secret
+                """), UserFileFormat.CSV);
+
+        assertEquals(1, result.imported());
+        assertEquals(3, result.failed());
+        assertEquals(List.of(
+                new ImportResult.RowError(2, "Email should be valid"),
+                new ImportResult.RowError(3, "Username is required"),
+                new ImportResult.RowError(4, "Malformed row: expected 3 columns but found 2")), result.errors());
+        assertFalse(result.errorsTruncated());
+    }
+
+    @Test
+    void importUsers_shouldRejectDuplicatesBeforeHashing() throws Exception {
+        when(userRepository.findKeysByUsernameInOrEmailIn(anyCollection(), anyCollection()))
+                .thenReturn(List.of(new UserKeys(9L, "taken", "taken@example.com")))
+                // erin from the first chunk is committed by the time the second one is checked
+                .thenReturn(List.of(new UserKeys(10L, "erin", "erin@example.com")));
+
+        ImportResult result = importService.importUsers(body("""
+                {"username":"taken","email":"new@example.com","password":"secret"}
+                {"username":"erin","email":"erin@example.com","password":"secret"}
+                {"username":"erin","email":"other@example.com","password":"secret"}
+                """), UserFileFormat.NDJSON);
+
+        assertEquals(1, result.imported());
+        assertEquals(List.of(
+                new ImportResult.RowError(1, "Username is already taken"),
+                new ImportResult.RowError(3, "Username is already taken")), result.errors());
+        verify(passwordEncoder, times(1)).encode(anyString());
+    }
+
+    @Test
+    void importUsers_shouldReportMalformedJsonLines() throws Exception {
+        ImportResult result = importService.importUsers(body("""
+                {"username":"frank","email":"frank@example.com","password":"secret"}
+                {"username":"broken",
+                """), UserFileFormat.NDJSON);
+
+        assertEquals(1, result.imported());
+        assertEquals(2, result.errors().get(0).line());
+        assertTrue(result.errors().get(0).message().startsWith("Malformed row:"));
+    }
+
+    @Test
+    void importUsers_shouldRetryRowByRowWhenAConcurrentSignupConflicts() throws Exception {
+        doThrow(new DataIntegrityViolationException("batch failed")).when(userRepository).saveAll(any());
+        when(userRepository.saveAndFlush(any(User.class))).thenAnswer(invocation -> {
+            User user = invocation.getArgument(0);
+            if (user.getUsername().equals("grace")) {
+                throw new DataIntegrityViolationException("duplicate key", new ConstraintViolationException(
+                        "duplicate key", new SQLException("duplicate key"), User.USERNAME_CONSTRAINT));
+            }
+            return user;
+        });
+
+        ImportResult result = importService.importUsers(body("""
+                username,email,password
+                grace,grace@example.com,secret
+                heidi,heidi@example.com,secret
+                """), UserFileFormat.CSV);
+
+        assertEquals(1, result.imported());
+        assertEquals(List.of(new ImportResult.RowError(2, "Username is already taken")), result.errors());
+        verify(userExistenceFilter).addUser("heidi", "heidi@example.com");
+        verify(userExistenceFilter, never()).addUser(eq("grace"), any());
+    }
+
+    @Test
+    void importUsers_shouldCapListedErrors() throws Exception {
+        ImportResult result = importService.importUsers(body("""
+                username,email,password
+                a,bad,secret
+                b,bad,secret
+                c,bad,secret
+                d,bad,secret
+                """), UserFileFormat.CSV);
+
+        assertEquals(4, result.failed());
+        assertEquals(3, result.errors().size());
+        assertTrue(result.errorsTruncated());
+        verifyNoInteractions(userRepository);
+    }
+
+    @Test
+    void importUsers_shouldRejectCsvWithoutRequiredHeader() throws Exception {
+        ImportResult result = importService.importUsers(body("alice,alice@example.com,secret\n"),
+                UserFileFormat.CSV);
+
+        assertEquals(0, result.imported());
+        assertEquals(1, result.errors().get(0).line());
+        verifyNoInteractions(userRepository);
+    }
+
+    @Test
+    void parseLine_shouldHandleQuotedFields() {
+        assertEquals(List.of("o'neil", "a,b@example.com", "pa\"ss", ""),
+                UserImportService.CsvColumns.parseLine("o'neil,\"a,b@example.com\",\"pa\"\"ss\","));
+        assertThrows(IllegalArgumentException.class, () -> UserImportService.CsvColumns.parseLine("\"open"));
+    }
+}
@@ -1,20 +1,29 @@
 package com.kingtan.users.service;
 
 import com.kingtan.users.dto.SignupRequest;
+import com.kingtan.users.dto.UserBatchResponse;
 import com.kingtan.users.dto.UserDTO;
 import com.kingtan.users.model.Role;
 import com.kingtan.users.model.User;
-import com.kingtan.users.repository.RoleRepository;
 import com.kingtan.users.repository.UserRepository;
+import com.kingtan.users.repository.UserSummary;
+import com.kingtan.users.repository.UserVersion;
+import org.hibernate.exception.ConstraintViolationException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.security.crypto.password.PasswordEncoder;
 
+import java.sql.SQLException;
 import java.util.*;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
@@ -27,11 +36,17 @@ class UserServiceTest {
     private UserRepository userRepository;
 
     @Mock
-    private RoleRepository roleRepository;
+    private RoleRegistry roleRegistry;
 
     @Mock
     private PasswordEncoder passwordEncoder;
 
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private UserExistenceFilter userExistenceFilter;
+
     @InjectMocks
     private UserService userService;
 
@@ -39,6 +54,7 @@ class UserServiceTest {
     private Role userRole;
     private SignupRequest signupRequest;
     private UserDTO userDTO;
+    private UserSummary userSummary;
 
     @BeforeEach
     void setUp() {
@@ -55,15 +71,17 @@ class UserServiceTest {
         signupRequest = new SignupRequest("testuser","test@example.com","plainPassword");
 
         userDTO = new UserDTO(1L,"testuser","test@example.com",Set.of("ROLE_USER"));
+        userSummary = new UserSummary(1L, "testuser", "test@example.com", 3L, "ROLE_USER");
+
+        lenient().when(userExistenceFilter.mightContainUsername(any())).thenReturn(true);
+        lenient().when(userExistenceFilter.mightContainEmail(any())).thenReturn(true);
     }
 
     @Test
     void registerUser_Success() {
-        when(userRepository.existsByUsername("testuser")).thenReturn(false);
-        when(userRepository.existsByEmail("test@example.com")).thenReturn(false);
-        when(roleRepository.findByName("ROLE_USER")).thenReturn(Optional.of(userRole));
+        when(roleRegistry.findByName("ROLE_USER")).thenReturn(Optional.of(userRole));
         when(passwordEncoder.encode("plainPassword")).thenReturn("encodedPassword");
-        when(userRepository.save(any(User.class))).thenReturn(user);
+        when(userRepository.saveAndFlush(any(User.class))).thenReturn(user);
 
         UserDTO result = userService.registerUser(signupRequest);
 
@@ -71,42 +89,65 @@ class UserServiceTest {
         assertEquals("testuser", result.username());
         assertEquals("test@example.com", result.email());
         assertEquals(Set.of("ROLE_USER"), result.roles());
-        verify(userRepository).save(any(User.class));
+        verify(userRepository).saveAndFlush(any(User.class));
+        verify(userRepository, never()).existsByUsername(any());
+        verify(userRepository, never()).existsByEmail(any());
+        verify(userExistenceFilter).addUser("testuser", "test@example.com");
     }
 
     @Test
     void registerUser_UsernameTaken_ThrowsException() {
-        when(userRepository.existsByUsername("testuser")).thenReturn(true);
+        when(roleRegistry.findByName("ROLE_USER")).thenReturn(Optional.of(userRole));
+        when(userRepository.saveAndFlush(any(User.class))).thenThrow(uniqueViolation(User.USERNAME_CONSTRAINT));
 
         RuntimeException exception = assertThrows(RuntimeException.class, () -> userService.registerUser(signupRequest));
         assertEquals("Username is already taken", exception.getMessage());
-        verify(userRepository, never()).save(any());
+        verify(userExistenceFilter, never()).addUser(any(), any());
     }
 
     @Test
     void registerUser_EmailInUse_ThrowsException() {
-        when(userRepository.existsByUsername("testuser")).thenReturn(false);
-        when(userRepository.existsByEmail("test@example.com")).thenReturn(true);
+        when(roleRegistry.findByName("ROLE_USER")).thenReturn(Optional.of(userRole));
+        when(userRepository.saveAndFlush(any(User.class))).thenThrow(uniqueViolation(User.EMAIL_CONSTRAINT));
 
         RuntimeException exception = assertThrows(RuntimeException.class, () -> userService.registerUser(signupRequest));
         assertEquals("Email is already in use", exception.getMessage());
-        verify(userRepository, never()).save(any());
+    }
+
+    @Test
+    void registerUser_OtherIntegrityViolation_IsRethrown() {
+        DataIntegrityViolationException violation = uniqueViolation("fk_user_roles_role");
+        when(roleRegistry.findByName("ROLE_USER")).thenReturn(Optional.of(userRole));
+        when(userRepository.saveAndFlush(any(User.class))).thenThrow(violation);
+
+        assertSame(violation, assertThrows(RuntimeException.class, () -> userService.registerUser(signupRequest)));
+    }
+
+    @Test
+    void toConflict_FallsBackToDriverMessageWithoutConstraintName() {
+        DataIntegrityViolationException violation = new DataIntegrityViolationException("insert failed",
+                new SQLException("Unique index or primary key violation: \"PUBLIC.USERS_EMAIL_KEY_INDEX_4\""));
+
+        assertEquals("Email is already in use", UserService.toConflict(violation).getMessage());
     }
 
     @Test
     void registerUser_RoleNotFound_ThrowsException() {
-        when(userRepository.existsByUsername("testuser")).thenReturn(false);
-        when(userRepository.existsByEmail("test@example.com")).thenReturn(false);
-        when(roleRepository.findByName("ROLE_USER")).thenReturn(Optional.empty());
+        when(roleRegistry.findByName("ROLE_USER")).thenReturn(Optional.empty());
 
         RuntimeException exception = assertThrows(RuntimeException.class, () -> userService.registerUser(signupRequest));
         assertEquals("Role not found", exception.getMessage());
-        verify(userRepository, never()).save(any());
+        verify(userRepository, never()).saveAndFlush(any());
+    }
+
+    private static DataIntegrityViolationException uniqueViolation(String constraint) {
+        return new DataIntegrityViolationException("could not execute statement",
+                new ConstraintViolationException("duplicate key", new SQLException("duplicate key"), constraint));
     }
 
     @Test
     void findByUsername_Success() {
-        when(userRepository.findByUsername("testuser")).thenReturn(Optional.of(user));
+        when(userRepository.findSummaryByUsername("testuser")).thenReturn(Optional.of(userSummary));
 
         UserDTO result = userService.findByUsername("testuser");
 
@@ -118,17 +159,84 @@ class UserServiceTest {
 
     @Test
     void findByUsername_UserNotFound_ThrowsException() {
-        when(userRepository.findByUsername("testuser")).thenReturn(Optional.empty());
+        when(userRepository.findSummaryByUsername("testuser")).thenReturn(Optional.empty());
 
         RuntimeException exception = assertThrows(RuntimeException.class, () -> userService.findByUsername("testuser"));
         assertEquals("User not found", exception.getMessage());
     }
 
     @Test
-    void findAllUsers_Success() {
-        when(userRepository.findAll()).thenReturn(List.of(user));
+    void findVersionedByUsername_TagsUserWithIdAndVersion() {
+        when(userRepository.findSummaryByUsername("testuser")).thenReturn(Optional.of(userSummary));
+
+        Versioned<UserDTO> result = userService.findVersionedByUsername("testuser");
+
+        assertEquals("\"1-3\"", result.etag());
+        assertEquals("testuser", result.body().username());
+    }
+
+    @Test
+    void findUserETag_MatchesFullReadWithoutLoadingSummary() {
+        when(userRepository.findVersionByUsername("testuser")).thenReturn(Optional.of(new UserVersion(1L, 3L)));
+        when(userRepository.findSummaryByUsername("testuser")).thenReturn(Optional.of(userSummary));
+
+        assertEquals(Optional.of(userService.findVersionedByUsername("testuser").etag()),
+                userService.findUserETag("testuser"));
+        verify(userRepository, times(1)).findSummaryByUsername("testuser");
+    }
+
+    @Test
+    void findUserETag_UnknownUser_ReturnsEmpty() {
+        when(userRepository.findVersionByUsername("nobody")).thenReturn(Optional.empty());
+
+        assertTrue(userService.findUserETag("nobody").isEmpty());
+    }
+
+    @Test
+    void findUsersPageETag_MatchesFullPageAndChangesWithAnyVersion() {
+        when(userRepository.findSummariesAfter(0L, Limit.of(50))).thenReturn(List.of(userSummary));
+        when(userRepository.findVersionsAfter(0L, Limit.of(50)))
+                .thenReturn(List.of(new UserVersion(1L, 3L)))
+                .thenReturn(List.of(new UserVersion(1L, 4L)));
+
+        String pageETag = userService.findVersionedUsersPage(null, 50).etag();
+
+        assertEquals(pageETag, userService.findUsersPageETag(null, 50));
+        assertNotEquals(pageETag, userService.findUsersPageETag(null, 50), "An update must change the page tag");
+        assertNotEquals(UserService.pageETag(List.of()), pageETag);
+    }
+
+    @Test
+    void findUsers_KeysResultsByIdAndUsername() {
+        UserSummary other = new UserSummary(2L, "other", "other@example.com", 0L, null);
+        when(userExistenceFilter.mightContainUsername("ghost")).thenReturn(false);
+        when(userRepository.findSummariesByIdInOrUsernameIn(Set.of(1L, 9L), Set.of("other")))
+                .thenReturn(List.of(userSummary, other));
+
+        UserBatchResponse result = userService.findUsers(List.of(1L, 9L, 1L), Arrays.asList("other", "ghost", null));
+
+        assertEquals(Set.of(1L), result.ids().keySet());
+        assertEquals("testuser", result.ids().get(1L).username());
+        assertEquals(Set.of("other"), result.usernames().keySet());
+        assertEquals(Set.of(), result.usernames().get("other").roles());
+    }
+
+    @Test
+    void findUsers_NothingToLookUp_SkipsQuery() {
+        when(userExistenceFilter.mightContainUsername("ghost")).thenReturn(false);
+
+        UserBatchResponse result = userService.findUsers(null, List.of("ghost"));
+
+        assertTrue(result.ids().isEmpty());
+        assertTrue(result.usernames().isEmpty());
+        verify(userRepository, never()).findSummariesByIdInOrUsernameIn(any(), any());
+    }
+
+    @Test
+    void findUsersPage_Success() {
+        when(userRepository.findSummariesAfter(0L, Limit.of(50))).thenReturn(List.of(userSummary));
 
-        List<UserDTO> result = userService.findAllUsers();
+        List<UserDTO> result = userService.findUsersPage(null, 50);
 
         assertEquals(1, result.size());
         assertEquals("testuser", result.get(0).username());
@@ -137,19 +245,40 @@ class UserServiceTest {
     }
 
     @Test
-    void findAllUsers_EmptyList() {
-        when(userRepository.findAll()).thenReturn(Collections.emptyList());
+    void findUsersPage_EmptyList() {
+        when(userRepository.findSummariesAfter(10L, Limit.of(50))).thenReturn(Collections.emptyList());
 
-        List<UserDTO> result = userService.findAllUsers();
+        List<UserDTO> result = userService.findUsersPage(10L, 50);
 
         assertTrue(result.isEmpty());
     }
 
+    @Test
+    void findUsersPage_CapsPageSize() {
+        when(userRepository.findSummariesAfter(0L, Limit.of(UserService.MAX_PAGE_SIZE)))
+                .thenReturn(Collections.emptyList());
+
+        userService.findUsersPage(null, 1_000_000);
+
+        verify(userRepository).findSummariesAfter(0L, Limit.of(UserService.MAX_PAGE_SIZE));
+    }
+
+    @Test
+    void streamAllUsers_MapsEverySummary() {
+        UserSummary withoutRoles = new UserSummary(2L, "other", "other@example.com", 0L, null);
+        when(userRepository.streamSummaries()).thenReturn(Stream.of(userSummary, withoutRoles));
+        List<UserDTO> streamed = new ArrayList<>();
+
+        userService.streamAllUsers(streamed::add);
+
+        assertEquals(List.of(userDTO, new UserDTO(2L, "other", "other@example.com", Set.of())), streamed);
+    }
+
     @Test
     void updateUser_Success() {
         when(userRepository.findById(1L)).thenReturn(Optional.of(user));
-        when(roleRepository.findByName("ROLE_USER")).thenReturn(Optional.of(userRole));
-        when(userRepository.save(any(User.class))).thenReturn(user);
+        when(roleRegistry.findByName("ROLE_USER")).thenReturn(Optional.of(userRole));
+        when(userRepository.saveAndFlush(any(User.class))).thenReturn(user);
 
         UserDTO result = userService.updateUser(1L, userDTO);
 
@@ -157,7 +286,77 @@ class UserServiceTest {
         assertEquals("testuser", result.username());
         assertEquals("test@example.com", result.email());
         assertEquals(Set.of("ROLE_USER"), result.roles());
-        verify(userRepository).save(any(User.class));
+        assertEquals(0, user.getAuthVersion(), "Unchanged username and roles should keep issued tokens valid");
+        verify(userRepository).saveAndFlush(any(User.class));
+        verify(eventPublisher).publishEvent(new UserAccountChangedEvent("testuser"));
+    }
+
+    @Test
+    void updateUser_RoleChange_BumpsAuthVersion() {
+        Role adminRole = new Role();
+        adminRole.setName("ROLE_ADMIN");
+        UserDTO adminDto = new UserDTO(1L, "testuser", "test@example.com", Set.of("ROLE_ADMIN"));
+        when(userRepository.findById(1L)).thenReturn(Optional.of(user));
+        when(roleRegistry.findByName("ROLE_ADMIN")).thenReturn(Optional.of(adminRole));
+        when(userRepository.saveAndFlush(any(User.class))).thenReturn(user);
+        Set<Role> loadedRoles = user.getRoles();
+
+        UserDTO result = userService.updateUser(1L, adminDto);
+
+        assertEquals(Set.of("ROLE_ADMIN"), result.roles());
+        assertEquals(1, user.getAuthVersion());
+        assertSame(loadedRoles, user.getRoles(), "Roles should be diffed into the loaded collection, not replaced");
+        verify(eventPublisher).publishEvent(new UserAccountChangedEvent("testuser"));
+    }
+
+    @Test
+    void updateUser_MatchingIfMatch_ReturnsNewETag() {
+        user.setVersion(3);
+        when(userRepository.findById(1L)).thenReturn(Optional.of(user));
+        when(roleRegistry.findByName("ROLE_USER")).thenReturn(Optional.of(userRole));
+        when(userRepository.saveAndFlush(user)).thenAnswer(invocation -> {
+            user.setVersion(4);
+            return user;
+        });
+
+        Versioned<UserDTO> result = userService.updateUser(1L,
+                new UserDTO(1L, "testuser", "new@example.com", Set.of("ROLE_USER")), "W/\"1-3\", \"1-3\"");
+
+        assertEquals("\"1-4\"", result.etag());
+        assertEquals("new@example.com", result.body().email());
+    }
+
+    @Test
+    void updateUser_StaleIfMatch_ThrowsWithoutWriting() {
+        user.setVersion(4);
+        when(userRepository.findById(1L)).thenReturn(Optional.of(user));
+
+        assertThrows(UserVersionConflictException.class, () -> userService.updateUser(1L, userDTO, "\"1-3\""));
+        assertThrows(UserVersionConflictException.class, () -> userService.updateUser(1L, userDTO, "W/\"1-4\""));
+        assertEquals("test@example.com", user.getEmail());
+        verify(userRepository, never()).saveAndFlush(any());
+        verify(eventPublisher, never()).publishEvent(any());
+    }
+
+    @Test
+    void updateUser_ConcurrentUpdate_ThrowsConflict() {
+        when(userRepository.findById(1L)).thenReturn(Optional.of(user));
+        when(roleRegistry.findByName("ROLE_USER")).thenReturn(Optional.of(userRole));
+        when(userRepository.saveAndFlush(user)).thenThrow(new ObjectOptimisticLockingFailureException(User.class, 1L));
+
+        assertThrows(UserVersionConflictException.class, () -> userService.updateUser(1L, userDTO, "*"));
+        verify(eventPublisher, never()).publishEvent(any());
+    }
+
+    @Test
+    void updateUser_RenameToTakenUsername_ReportsConflict() {
+        when(userRepository.findById(1L)).thenReturn(Optional.of(user));
+        when(roleRegistry.findByName("ROLE_USER")).thenReturn(Optional.of(userRole));
+        when(userRepository.saveAndFlush(user)).thenThrow(uniqueViolation(User.USERNAME_CONSTRAINT));
+
+        RuntimeException exception = assertThrows(RuntimeException.class, () ->
+                userService.updateUser(1L, new UserDTO(1L, "taken", "test@example.com", Set.of("ROLE_USER"))));
+        assertEquals("Username is already taken", exception.getMessage());
     }
 
     @Test
@@ -166,35 +365,37 @@ class UserServiceTest {
 
         RuntimeException exception = assertThrows(RuntimeException.class, () -> userService.updateUser(1L, userDTO));
         assertEquals("User not found", exception.getMessage());
-        verify(userRepository, never()).save(any());
+        verify(userRepository, never()).saveAndFlush(any());
     }
 
     @Test
     void updateUser_RoleNotFound_ThrowsException() {
         UserDTO invalidDto = new UserDTO(userDTO.id(), userDTO.username(), userDTO.email(), Set.of("ROLE_INVALID"));
         when(userRepository.findById(1L)).thenReturn(Optional.of(user));
-        when(roleRepository.findByName("ROLE_INVALID")).thenReturn(Optional.empty());
+        when(roleRegistry.findByName("ROLE_INVALID")).thenReturn(Optional.empty());
 
         RuntimeException exception = assertThrows(RuntimeException.class, () -> userService.updateUser(1L, invalidDto));
         assertEquals("Role not found: ROLE_INVALID", exception.getMessage());
-        verify(userRepository, never()).save(any());
+        verify(userRepository, never()).saveAndFlush(any());
     }
 
     @Test
     void deleteUser_Success() {
-        when(userRepository.existsById(1L)).thenReturn(true);
+        when(userRepository.findById(1L)).thenReturn(Optional.of(user));
 
         userService.deleteUser(1L);
 
-        verify(userRepository).deleteById(1L);
+        verify(userRepository).delete(user);
+        verify(eventPublisher).publishEvent(new UserAccountChangedEvent("testuser"));
     }
 
     @Test
     void deleteUser_UserNotFound_ThrowsException() {
-        when(userRepository.existsById(1L)).thenReturn(false);
+        when(userRepository.findById(1L)).thenReturn(Optional.empty());
 
         RuntimeException exception = assertThrows(RuntimeException.class, () -> userService.deleteUser(1L));
         assertEquals("User not found", exception.getMessage());
-        verify(userRepository, never()).deleteById(any());
+        verify(userRepository, never()).delete(any());
+        verify(eventPublisher, never()).publishEvent(any());
     }
 }
\ No newline at end of file